@@ -0,0 +1,579 @@
+package interpreter;
+
+import java_cup.runtime.ComplexSymbolFactory.Location;
+import source.ErrorHandler;
+import source.Errors;
+import syms.SymEntry;
+import syms.Type;
+import tree.DeclNode;
+import tree.ExpNode;
+import tree.Operator;
+import tree.StatementNode;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.*;
+
+/**
+ * Execute a program by first compiling its abstract syntax tree into a
+ * tree of executable nodes (ExecStatement and ExecExp), then executing
+ * those. Unlike the Interpreter, which visits the abstract syntax tree
+ * and switches on the operator of each expression every time it is
+ * evaluated, the choice of operation and the resolution of variables
+ * to levels and offsets is made once, when the program is compiled.
+ * The variables of active procedures are held in a Stack.
+ * The output and runtime errors are the same as for the Interpreter.
+ */
+public class CompiledInterpreter {
+
+    /**
+     * Runtime error reported when the Java stack of the thread executing
+     * the program is exhausted
+     */
+    static final String STACK_OVERFLOW =
+            "recursion too deep for the interpreter's stack";
+
+    /**
+     * Least number of guards of an if expression compiled to a range table
+     */
+    private static final int MIN_TABLE_GUARDS = 3;
+
+    /**
+     * Buffered input of stdin
+     */
+    private final BufferedReader in;
+
+    /**
+     * Errors are reported through the error handler.
+     */
+    private final Errors errors;
+
+    /**
+     * Program output stream
+     */
+    private final PrintStream outStream;
+
+    /**
+     * Compiled procedures indexed by their entries
+     */
+    private final Map<SymEntry.ProcedureEntry, ExecStatement.Procedure> procedures =
+            new HashMap<>();
+
+    /**
+     * Procedures whose bodies are still to be compiled
+     */
+    private final Deque<ExecStatement.Procedure> pending = new ArrayDeque<>();
+
+    /**
+     * Profile of the run, or null if not profiling
+     */
+    private final Profile profile;
+
+    /**
+     * Construct a new interpreter
+     *
+     * @param errors      Error message handler
+     * @param inputStream Program input stream
+     * @param outStream   Program output stream
+     */
+    public CompiledInterpreter(Errors errors, InputStream inputStream,
+                               PrintStream outStream) {
+        this(errors, inputStream, outStream, null);
+    }
+
+    /**
+     * Construct a new interpreter profiling the run
+     *
+     * @param errors      Error message handler
+     * @param inputStream Program input stream
+     * @param outStream   Program output stream
+     * @param profile     Profile of the run, or null if not profiling
+     */
+    public CompiledInterpreter(Errors errors, InputStream inputStream,
+                               PrintStream outStream, Profile profile) {
+        this.errors = errors;
+        this.in = new BufferedReader(new InputStreamReader(inputStream));
+        this.outStream = outStream;
+        this.profile = profile;
+    }
+
+    /**
+     * Compile and execute the main procedure
+     *
+     * @param node Abstract syntax tree for the main program.
+     */
+    public void executeCode(DeclNode.ProcedureNode node) {
+        SymEntry.ProcedureEntry procEntry = node.getProcEntry();
+        ExecStatement.Procedure main = procedure(procEntry);
+        /* Compile the main program and the procedures it calls */
+        int maxLevel = 0;
+        while (!pending.isEmpty()) {
+            ExecStatement.Procedure proc = pending.removeFirst();
+            maxLevel = Math.max(maxLevel, proc.level);
+            proc.body = compile(proc.entry.getBlock().getBody());
+        }
+        Stack stack = new Stack(maxLevel);
+        stack.enter(procEntry, main.level, main.space);
+        try {
+            main.body.execute(stack);
+        } catch (StackOverflowError e) {
+            /* The stack still holds the frames active when it overflowed */
+            runtime(errors, STACK_OVERFLOW, ErrorHandler.NO_LOCATION, stack);
+        }
+        stack.exit(main.level);
+    }
+
+    /**
+     * @return the compiled procedure for the entry, compiled later
+     */
+    private ExecStatement.Procedure procedure(SymEntry.ProcedureEntry entry) {
+        ExecStatement.Procedure proc = procedures.get(entry);
+        if (proc == null) {
+            proc = new ExecStatement.Procedure(entry);
+            procedures.put(entry, proc);
+            pending.add(proc);
+        }
+        return proc;
+    }
+
+    /* Statement compilation */
+
+    /**
+     * Compile a statement, counting its executions if profiling
+     */
+    private ExecStatement compile(StatementNode statement) {
+        ExecStatement compiled = compileStatement(statement);
+        if (profile == null) {
+            return compiled;
+        }
+        return new ExecStatement.Profiled(compiled, profile,
+                profile.counter(statement.getLocation()));
+    }
+
+    private ExecStatement compileStatement(StatementNode statement) {
+        if (statement instanceof StatementNode.AssignmentNode assignment) {
+            if (assignment.getLValue() instanceof ExpNode.VariableNode variable) {
+                SymEntry.VarEntry var = variable.getVariable();
+                return new ExecStatement.Assign(var.getLevel(), var.getOffset(),
+                        compile(assignment.getExp()));
+            }
+            return new ExecStatement.AssignAddress(compileAddress(assignment.getLValue()),
+                    compile(assignment.getExp()));
+        } else if (statement instanceof StatementNode.MultipleAssignmentNode multiple) {
+            return compileMultipleAssignment(multiple);
+        } else if (statement instanceof StatementNode.ReadNode read) {
+            if (read.getLValue() instanceof ExpNode.VariableNode variable) {
+                SymEntry.VarEntry var = variable.getVariable();
+                return new ExecStatement.Read(var.getLevel(), var.getOffset(), in, errors,
+                        read.getLocation());
+            }
+            return new ExecStatement.ReadAddress(compileAddress(read.getLValue()),
+                    in, errors, read.getLocation());
+        } else if (statement instanceof StatementNode.WriteNode write) {
+            return new ExecStatement.Write(compile(write.getExp()), outStream);
+        } else if (statement instanceof StatementNode.CallNode call) {
+            return new ExecStatement.Call(procedure(call.getEntry()));
+        } else if (statement instanceof StatementNode.ListNode list) {
+            List<StatementNode> statements = list.getStatements();
+            ExecStatement[] compiled = new ExecStatement[statements.size()];
+            for (int i = 0; i < compiled.length; i++) {
+                compiled[i] = compile(statements.get(i));
+            }
+            return new ExecStatement.List(compiled);
+        } else if (statement instanceof StatementNode.IfNode ifNode) {
+            return new ExecStatement.If(compile(ifNode.getCondition()),
+                    compile(ifNode.getThenStmt()), compile(ifNode.getElseStmt()));
+        } else if (statement instanceof StatementNode.WhileNode whileNode) {
+            return new ExecStatement.While(compile(whileNode.getCondition()),
+                    compile(whileNode.getLoopStmt()));
+        }
+        errors.fatal("PL0 Internal error: compiling " +
+                statement.getClass().getSimpleName(), statement.getLocation());
+        return null; // Never reached
+    }
+
+    /**
+     * Compile a multiple assignment. Whether a variable is assigned more
+     * than once has been found by the static checker, but as in the
+     * Interpreter it is reported after the expressions have been evaluated.
+     */
+    private ExecStatement compileMultipleAssignment(
+            StatementNode.MultipleAssignmentNode node) {
+        List<StatementNode.AssignmentNode> assignments = node.getAssignmentNodeList();
+        if (!node.hasVariableTargets()) {
+            return compileMultipleAssignmentAddresses(assignments);
+        }
+        int count = assignments.size();
+        int[] levels = new int[count];
+        int[] offsets = new int[count];
+        ExecExp[] exps = new ExecExp[count];
+        for (int i = 0; i < count; i++) {
+            StatementNode.AssignmentNode assignment = assignments.get(i);
+            SymEntry.VarEntry var =
+                    ((ExpNode.VariableNode) assignment.getLValue()).getVariable();
+            levels[i] = var.getLevel();
+            offsets[i] = var.getOffset();
+            exps[i] = compile(assignment.getExp());
+        }
+        int duplicate = node.getDuplicate();
+        Location duplicateLoc = duplicate < 0 ? null :
+                assignments.get(duplicate).getLValue().getLocation();
+        return new ExecStatement.MultipleAssign(levels, offsets, exps, duplicate,
+                errors, duplicateLoc);
+    }
+
+    /**
+     * Compile a multiple assignment to left values that are not all
+     * variables, so whether one is assigned more than once is only known
+     * when it is executed.
+     */
+    private ExecStatement compileMultipleAssignmentAddresses(
+            List<StatementNode.AssignmentNode> assignments) {
+        int count = assignments.size();
+        ExecExp.Address[] lValues = new ExecExp.Address[count];
+        ExecExp[] exps = new ExecExp[count];
+        Location[] locs = new Location[count];
+        for (int i = 0; i < count; i++) {
+            StatementNode.AssignmentNode assignment = assignments.get(i);
+            lValues[i] = compileAddress(assignment.getLValue());
+            exps[i] = compile(assignment.getExp());
+            locs[i] = assignment.getLValue().getLocation();
+        }
+        return new ExecStatement.MultipleAssignAddresses(lValues, exps, errors, locs);
+    }
+
+    /**
+     * Compile a left value to the address of the variable it refers to
+     */
+    private ExecExp.Address compileAddress(ExpNode lValue) {
+        if (lValue instanceof ExpNode.VariableNode variable) {
+            SymEntry.VarEntry var = variable.getVariable();
+            return new ExecExp.VariableAddress(var.getLevel(), var.getOffset());
+        } else if (lValue instanceof ExpNode.IfExpNode ifExp) {
+            List<ExpNode.IfExpNode.IfExpBranch> branches = ifExp.getBranches();
+            ExecExp[] guards = new ExecExp[branches.size()];
+            ExecExp.Address[] addresses = new ExecExp.Address[branches.size()];
+            for (int i = 0; i < guards.length; i++) {
+                guards[i] = compile(branches.get(i).guard());
+                addresses[i] = compileAddress(branches.get(i).exp());
+            }
+            return new ExecExp.IfAddress(guards, addresses, errors, ifExp.getLocation());
+        }
+        errors.fatal("PL0 Internal error: compiling left value " +
+                lValue.getClass().getSimpleName(), lValue.getLocation());
+        return null; // Never reached
+    }
+
+    /* Expression compilation */
+
+    /**
+     * Compile an expression, counting its evaluations if profiling
+     */
+    private ExecExp compile(ExpNode exp) {
+        ExecExp compiled = compileExp(exp);
+        if (profile == null || exp instanceof ExpNode.WidenSubrangeNode) {
+            /* A widening is compiled to the expression it widens */
+            return compiled;
+        }
+        return new ExecExp.Profiled(compiled, profile,
+                profile.counter(exp.getLocation()));
+    }
+
+    private ExecExp compileExp(ExpNode exp) {
+        if (exp instanceof ExpNode.ConstNode constant) {
+            return new ExecExp.Const(constant.getValue());
+        } else if (exp instanceof ExpNode.DereferenceNode deref) {
+            if (deref.getLeftValue() instanceof ExpNode.VariableNode variable) {
+                SymEntry.VarEntry var = variable.getVariable();
+                if (deref.isDefinitelyAssigned()) {
+                    return new ExecExp.AssignedLoad(var.getLevel(), var.getOffset());
+                }
+                return new ExecExp.Load(var.getLevel(), var.getOffset(), errors,
+                        deref.getLocation());
+            }
+            return new ExecExp.LoadAddress(compileAddress(deref.getLeftValue()),
+                    errors, deref.getLocation());
+        } else if (exp instanceof ExpNode.BinaryNode binary) {
+            ExecExp left = compile(binary.getLeft());
+            ExecExp right = compile(binary.getRight());
+            switch (binary.getOp()) {
+                case ADD_OP:
+                    return new ExecExp.Add(left, right);
+                case SUB_OP:
+                    return new ExecExp.Sub(left, right);
+                case MUL_OP:
+                    return new ExecExp.Mul(left, right);
+                case DIV_OP:
+                    return new ExecExp.Div(left, right, errors,
+                            binary.getRight().getLocation());
+                case EQUALS_OP:
+                    return new ExecExp.Equals(left, right);
+                case NEQUALS_OP:
+                    return new ExecExp.NotEquals(left, right);
+                case LESS_OP:
+                    return new ExecExp.Less(left, right);
+                case LEQUALS_OP:
+                    return new ExecExp.LessEquals(left, right);
+                case GREATER_OP:
+                    return new ExecExp.Greater(left, right);
+                case GEQUALS_OP:
+                    return new ExecExp.GreaterEquals(left, right);
+                default:
+                    errors.fatal("PL0 Internal error: Unknown operator",
+                            binary.getLocation());
+                    return null; // Never reached
+            }
+        } else if (exp instanceof ExpNode.UnaryNode unary) {
+            switch (unary.getOp()) {
+                case NEG_OP:
+                    return new ExecExp.Negate(compile(unary.getArg()));
+                default:
+                    errors.fatal("PL0 Internal error: Unknown operator",
+                            unary.getLocation());
+                    return null; // Never reached
+            }
+        } else if (exp instanceof ExpNode.NarrowSubrangeNode narrow) {
+            return new ExecExp.Narrow(compile(narrow.getExp()),
+                    narrow.getSubrangeType(), errors, narrow.getLocation());
+        } else if (exp instanceof ExpNode.WidenSubrangeNode widen) {
+            /* Widening has no effect at run time */
+            return compile(widen.getExp());
+        } else if (exp instanceof ExpNode.IfExpNode ifExp) {
+            List<ExpNode.IfExpNode.IfExpBranch> branches = ifExp.getBranches();
+            ExecExp[] guards = new ExecExp[branches.size()];
+            ExecExp[] exps = new ExecExp[branches.size()];
+            for (int i = 0; i < guards.length; i++) {
+                guards[i] = compile(branches.get(i).guard());
+                exps[i] = compile(branches.get(i).exp());
+            }
+            ExecExp table = compileRangeTable(ifExp, exps);
+            if (table != null) {
+                return table;
+            }
+            return new ExecExp.IfExp(guards, exps, errors, ifExp.getLocation());
+        }
+        errors.fatal("PL0 Internal error: compiling " +
+                exp.getClass().getSimpleName(), exp.getLocation());
+        return null; // Never reached
+    }
+
+    /**
+     * Compile an if expression whose guards all compare the same
+     * expression, the scrutinee, with constants into a range table.
+     * The set of values of the scrutinee for which each guard is true is
+     * a union of intervals, so the integers can be divided into intervals
+     * within which the first true guard is the same. Guards that are the
+     * constant true or false are also allowed, and the guards following a
+     * true guard are never evaluated.
+     *
+     * @param exps compiled expressions of the branches
+     * @return the range table, or null if the guards do not have that form
+     * or there are too few of them for a table to be worthwhile
+     */
+    private ExecExp compileRangeTable(ExpNode.IfExpNode ifExp, ExecExp[] exps) {
+        List<ExpNode.IfExpNode.IfExpBranch> branches = ifExp.getBranches();
+        if (branches.size() < MIN_TABLE_GUARDS) {
+            return null;
+        }
+        ExpNode scrutinee = null;
+        /* Intervals of values of the scrutinee for which each guard is
+         * true, as pairs of lower and upper bounds */
+        List<long[]> guardIntervals = new ArrayList<>();
+        for (ExpNode.IfExpNode.IfExpBranch branch : branches) {
+            ExpNode guard = branch.guard();
+            if (guard instanceof ExpNode.ConstNode constant) {
+                if (constant.getValue() == Type.TRUE_VALUE) {
+                    guardIntervals.add(new long[]{Integer.MIN_VALUE, Integer.MAX_VALUE});
+                    break;
+                }
+                guardIntervals.add(new long[0]);
+                continue;
+            }
+            if (!(guard instanceof ExpNode.BinaryNode comparison)) {
+                return null;
+            }
+            ExpNode left = comparison.getLeft();
+            ExpNode right = comparison.getRight();
+            Operator op = comparison.getOp();
+            ExpNode compared;
+            int value;
+            if (right instanceof ExpNode.ConstNode constant &&
+                    !(left instanceof ExpNode.ConstNode)) {
+                compared = left;
+                value = constant.getValue();
+            } else if (left instanceof ExpNode.ConstNode constant &&
+                    !(right instanceof ExpNode.ConstNode)) {
+                /* Compare the scrutinee on the left, e.g. 0 < x as x > 0 */
+                compared = right;
+                value = constant.getValue();
+                op = reverse(op);
+            } else {
+                return null;
+            }
+            if (scrutinee == null) {
+                scrutinee = compared;
+            } else if (!sameExp(scrutinee, compared)) {
+                return null;
+            }
+            long[] intervals = intervals(op, value);
+            if (intervals == null) {
+                return null;
+            }
+            guardIntervals.add(intervals);
+        }
+        if (scrutinee == null) {
+            /* The first true guard is constant */
+            return null;
+        }
+        /* The bounds of the intervals divide the integers into ranges
+         * within which every guard is either true or false */
+        TreeSet<Long> starts = new TreeSet<>();
+        starts.add((long) Integer.MIN_VALUE);
+        for (long[] intervals : guardIntervals) {
+            for (int i = 0; i < intervals.length; i += 2) {
+                starts.add(intervals[i]);
+                if (intervals[i + 1] < Integer.MAX_VALUE) {
+                    starts.add(intervals[i + 1] + 1);
+                }
+            }
+        }
+        List<Integer> lows = new ArrayList<>();
+        List<Integer> choices = new ArrayList<>();
+        for (long start : starts) {
+            int choice = -1;
+            for (int i = 0; i < guardIntervals.size() && choice < 0; i++) {
+                long[] intervals = guardIntervals.get(i);
+                for (int j = 0; j < intervals.length; j += 2) {
+                    if (intervals[j] <= start && start <= intervals[j + 1]) {
+                        choice = i;
+                        break;
+                    }
+                }
+            }
+            /* Merge adjacent ranges selecting the same branch */
+            if (choices.isEmpty() || choices.getLast() != choice) {
+                lows.add((int) start);
+                choices.add(choice);
+            }
+        }
+        int[] lowBounds = new int[lows.size()];
+        int[] branchIndices = new int[lows.size()];
+        for (int i = 0; i < lowBounds.length; i++) {
+            lowBounds[i] = lows.get(i);
+            branchIndices[i] = choices.get(i);
+        }
+        return new ExecExp.RangeTable(compile(scrutinee), lowBounds, branchIndices,
+                exps, errors, ifExp.getLocation());
+    }
+
+    /**
+     * @return the comparison with its arguments swapped, e.g. > for <
+     */
+    private static Operator reverse(Operator op) {
+        switch (op) {
+            case LESS_OP:
+                return Operator.GREATER_OP;
+            case LEQUALS_OP:
+                return Operator.GEQUALS_OP;
+            case GREATER_OP:
+                return Operator.LESS_OP;
+            case GEQUALS_OP:
+                return Operator.LEQUALS_OP;
+            default:
+                return op;
+        }
+    }
+
+    /**
+     * @return the intervals of values x for which x op value is true, as
+     * pairs of lower and upper bounds, or null if op is not a comparison
+     */
+    private static long[] intervals(Operator op, int value) {
+        long min = Integer.MIN_VALUE;
+        long max = Integer.MAX_VALUE;
+        long v = value;
+        switch (op) {
+            case EQUALS_OP:
+                return new long[]{v, v};
+            case NEQUALS_OP:
+                return nonEmpty(min, v - 1, v + 1, max);
+            case LESS_OP:
+                return nonEmpty(min, v - 1);
+            case LEQUALS_OP:
+                return new long[]{min, v};
+            case GREATER_OP:
+                return nonEmpty(v + 1, max);
+            case GEQUALS_OP:
+                return new long[]{v, max};
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return the intervals given by pairs of bounds, less those that
+     * are empty or outside the range of integers
+     */
+    private static long[] nonEmpty(long... bounds) {
+        List<Long> result = new ArrayList<>();
+        for (int i = 0; i < bounds.length; i += 2) {
+            long lower = Math.max(bounds[i], Integer.MIN_VALUE);
+            long upper = Math.min(bounds[i + 1], Integer.MAX_VALUE);
+            if (lower <= upper) {
+                result.add(lower);
+                result.add(upper);
+            }
+        }
+        long[] intervals = new long[result.size()];
+        for (int i = 0; i < intervals.length; i++) {
+            intervals[i] = result.get(i);
+        }
+        return intervals;
+    }
+
+    /**
+     * @return true iff the expressions are the same, so always have the
+     * same value within an expression
+     */
+    private static boolean sameExp(ExpNode a, ExpNode b) {
+        if (a instanceof ExpNode.ConstNode constA &&
+                b instanceof ExpNode.ConstNode constB) {
+            return constA.getValue() == constB.getValue();
+        } else if (a instanceof ExpNode.VariableNode varA &&
+                b instanceof ExpNode.VariableNode varB) {
+            return varA.getVariable() == varB.getVariable();
+        } else if (a instanceof ExpNode.DereferenceNode derefA &&
+                b instanceof ExpNode.DereferenceNode derefB) {
+            return sameExp(derefA.getLeftValue(), derefB.getLeftValue());
+        } else if (a instanceof ExpNode.BinaryNode binA &&
+                b instanceof ExpNode.BinaryNode binB) {
+            return binA.getOp() == binB.getOp() &&
+                    sameExp(binA.getLeft(), binB.getLeft()) &&
+                    sameExp(binA.getRight(), binB.getRight());
+        } else if (a instanceof ExpNode.UnaryNode unaryA &&
+                b instanceof ExpNode.UnaryNode unaryB) {
+            return unaryA.getOp() == unaryB.getOp() &&
+                    sameExp(unaryA.getArg(), unaryB.getArg());
+        } else if (a instanceof ExpNode.NarrowSubrangeNode narrowA &&
+                b instanceof ExpNode.NarrowSubrangeNode narrowB) {
+            return narrowA.getSubrangeType().equals(narrowB.getSubrangeType()) &&
+                    sameExp(narrowA.getExp(), narrowB.getExp());
+        } else if (a instanceof ExpNode.WidenSubrangeNode widenA &&
+                b instanceof ExpNode.WidenSubrangeNode widenB) {
+            return sameExp(widenA.getExp(), widenB.getExp());
+        }
+        return false;
+    }
+
+    /* Supporting Methods */
+
+    /**
+     * Signal a runtime error has occurred at a given location
+     */
+    static void runtime(Errors errors, String m, Location loc, Stack stack) {
+        String error = m + System.lineSeparator() + stack.toString();
+        errors.fatal(error, loc);
+    }
+}
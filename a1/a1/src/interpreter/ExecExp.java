@@ -0,0 +1,435 @@
+package interpreter;
+
+import java_cup.runtime.ComplexSymbolFactory.Location;
+import source.Errors;
+import syms.Type;
+
+import java.util.Arrays;
+
+/**
+ * class ExecExp - an expression compiled by the CompiledInterpreter for
+ * execution. There is a subclass for each operator and each
+ * shape of expression, so that evaluating an expression does not need to
+ * dispatch on the kind of node or operator. Variables are resolved to
+ * their static level and offset, from which the Stack finds them directly.
+ */
+abstract class ExecExp {
+
+    /**
+     * @param stack stack of the procedure executing the expression
+     * @return the value of the expression
+     */
+    abstract int evaluate(Stack stack);
+
+    /**
+     * Expression whose evaluations are counted and timed in a profile
+     */
+    static final class Profiled extends ExecExp {
+        private final ExecExp exp;
+        private final Profile profile;
+        private final Profile.Counter counter;
+
+        Profiled(ExecExp exp, Profile profile, Profile.Counter counter) {
+            this.exp = exp;
+            this.profile = profile;
+            this.counter = counter;
+        }
+
+        @Override
+        int evaluate(Stack stack) {
+            profile.enter(counter);
+            int value = exp.evaluate(stack);
+            profile.exit();
+            return value;
+        }
+    }
+
+    /**
+     * Constant value
+     */
+    static final class Const extends ExecExp {
+        private final int value;
+
+        Const(int value) {
+            this.value = value;
+        }
+
+        @Override
+        int evaluate(Stack stack) {
+            return value;
+        }
+    }
+
+    /**
+     * Value of a variable
+     */
+    static final class Load extends ExecExp {
+        private final int level;
+        private final int offset;
+        private final Errors errors;
+        private final Location loc;
+
+        Load(int level, int offset, Errors errors, Location loc) {
+            this.level = level;
+            this.offset = offset;
+            this.errors = errors;
+            this.loc = loc;
+        }
+
+        @Override
+        int evaluate(Stack stack) {
+            int address = stack.address(level, offset);
+            if (!stack.isAssigned(address)) {
+                CompiledInterpreter.runtime(errors,
+                        "variable accessed before assignment", loc, stack);
+            }
+            return stack.get(address);
+        }
+    }
+
+    /**
+     * Value of a variable that must have been assigned, so is not checked
+     */
+    static final class AssignedLoad extends ExecExp {
+        private final int level;
+        private final int offset;
+
+        AssignedLoad(int level, int offset) {
+            this.level = level;
+            this.offset = offset;
+        }
+
+        @Override
+        int evaluate(Stack stack) {
+            return stack.get(stack.address(level, offset));
+        }
+    }
+
+    /**
+     * Binary operator expression, with the operation provided by subclasses
+     */
+    abstract static class Binary extends ExecExp {
+        final ExecExp left;
+        final ExecExp right;
+
+        Binary(ExecExp left, ExecExp right) {
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    static final class Add extends Binary {
+        Add(ExecExp left, ExecExp right) {
+            super(left, right);
+        }
+
+        @Override
+        int evaluate(Stack stack) {
+            return left.evaluate(stack) + right.evaluate(stack);
+        }
+    }
+
+    static final class Sub extends Binary {
+        Sub(ExecExp left, ExecExp right) {
+            super(left, right);
+        }
+
+        @Override
+        int evaluate(Stack stack) {
+            return left.evaluate(stack) - right.evaluate(stack);
+        }
+    }
+
+    static final class Mul extends Binary {
+        Mul(ExecExp left, ExecExp right) {
+            super(left, right);
+        }
+
+        @Override
+        int evaluate(Stack stack) {
+            return left.evaluate(stack) * right.evaluate(stack);
+        }
+    }
+
+    static final class Div extends Binary {
+        private final Errors errors;
+        /* Location of the divisor */
+        private final Location loc;
+
+        Div(ExecExp left, ExecExp right, Errors errors, Location loc) {
+            super(left, right);
+            this.errors = errors;
+            this.loc = loc;
+        }
+
+        @Override
+        int evaluate(Stack stack) {
+            int dividend = left.evaluate(stack);
+            int divisor = right.evaluate(stack);
+            if (divisor == 0) {
+                CompiledInterpreter.runtime(errors, "Division by zero", loc, stack);
+            }
+            return dividend / divisor;
+        }
+    }
+
+    static final class Equals extends Binary {
+        Equals(ExecExp left, ExecExp right) {
+            super(left, right);
+        }
+
+        @Override
+        int evaluate(Stack stack) {
+            return left.evaluate(stack) == right.evaluate(stack) ?
+                    Type.TRUE_VALUE : Type.FALSE_VALUE;
+        }
+    }
+
+    static final class NotEquals extends Binary {
+        NotEquals(ExecExp left, ExecExp right) {
+            super(left, right);
+        }
+
+        @Override
+        int evaluate(Stack stack) {
+            return left.evaluate(stack) != right.evaluate(stack) ?
+                    Type.TRUE_VALUE : Type.FALSE_VALUE;
+        }
+    }
+
+    static final class Less extends Binary {
+        Less(ExecExp left, ExecExp right) {
+            super(left, right);
+        }
+
+        @Override
+        int evaluate(Stack stack) {
+            return left.evaluate(stack) < right.evaluate(stack) ?
+                    Type.TRUE_VALUE : Type.FALSE_VALUE;
+        }
+    }
+
+    static final class LessEquals extends Binary {
+        LessEquals(ExecExp left, ExecExp right) {
+            super(left, right);
+        }
+
+        @Override
+        int evaluate(Stack stack) {
+            return left.evaluate(stack) <= right.evaluate(stack) ?
+                    Type.TRUE_VALUE : Type.FALSE_VALUE;
+        }
+    }
+
+    static final class Greater extends Binary {
+        Greater(ExecExp left, ExecExp right) {
+            super(left, right);
+        }
+
+        @Override
+        int evaluate(Stack stack) {
+            return left.evaluate(stack) > right.evaluate(stack) ?
+                    Type.TRUE_VALUE : Type.FALSE_VALUE;
+        }
+    }
+
+    static final class GreaterEquals extends Binary {
+        GreaterEquals(ExecExp left, ExecExp right) {
+            super(left, right);
+        }
+
+        @Override
+        int evaluate(Stack stack) {
+            return left.evaluate(stack) >= right.evaluate(stack) ?
+                    Type.TRUE_VALUE : Type.FALSE_VALUE;
+        }
+    }
+
+    static final class Negate extends ExecExp {
+        private final ExecExp arg;
+
+        Negate(ExecExp arg) {
+            this.arg = arg;
+        }
+
+        @Override
+        int evaluate(Stack stack) {
+            return -arg.evaluate(stack);
+        }
+    }
+
+    /**
+     * Narrowing to a subrange, checking the value is within its bounds
+     */
+    static final class Narrow extends ExecExp {
+        private final ExecExp exp;
+        private final Type.SubrangeType subrange;
+        private final int lower;
+        private final int upper;
+        private final Errors errors;
+        private final Location loc;
+
+        Narrow(ExecExp exp, Type.SubrangeType subrange, Errors errors, Location loc) {
+            this.exp = exp;
+            this.subrange = subrange;
+            this.lower = subrange.getLower();
+            this.upper = subrange.getUpper();
+            this.errors = errors;
+            this.loc = loc;
+        }
+
+        @Override
+        int evaluate(Stack stack) {
+            int value = exp.evaluate(stack);
+            if (value < lower || upper < value) {
+                CompiledInterpreter.runtime(errors, "bounds check failed at line "
+                        + loc.getLine() + ": " + value + " not in "
+                        + subrange, loc, stack);
+            }
+            return value;
+        }
+    }
+
+    /**
+     * If expression, evaluating the expression of the first true guard
+     */
+    static final class IfExp extends ExecExp {
+        private final ExecExp[] guards;
+        private final ExecExp[] exps;
+        private final Errors errors;
+        private final Location loc;
+
+        IfExp(ExecExp[] guards, ExecExp[] exps, Errors errors, Location loc) {
+            this.guards = guards;
+            this.exps = exps;
+            this.errors = errors;
+            this.loc = loc;
+        }
+
+        @Override
+        int evaluate(Stack stack) {
+            for (int i = 0; i < guards.length; i++) {
+                if (guards[i].evaluate(stack) == Type.TRUE_VALUE) {
+                    return exps[i].evaluate(stack);
+                }
+            }
+            CompiledInterpreter.runtime(errors, "no alternative can be selected",
+                    loc, stack);
+            return 0; // Never reached
+        }
+    }
+
+    /**
+     * If expression whose guards compare the same expression with
+     * constants, compiled to a table of ranges of the value of that
+     * expression. The range containing the value is found by binary search
+     * and gives the branch of the first true guard.
+     */
+    static final class RangeTable extends ExecExp {
+        private final ExecExp scrutinee;
+        /* Lower bounds of the ranges, in increasing order, the first being
+         * the least integer */
+        private final int[] lows;
+        /* Branch selected in each range, or -1 if no guard is true */
+        private final int[] branches;
+        private final ExecExp[] exps;
+        private final Errors errors;
+        private final Location loc;
+
+        RangeTable(ExecExp scrutinee, int[] lows, int[] branches, ExecExp[] exps,
+                   Errors errors, Location loc) {
+            this.scrutinee = scrutinee;
+            this.lows = lows;
+            this.branches = branches;
+            this.exps = exps;
+            this.errors = errors;
+            this.loc = loc;
+        }
+
+        @Override
+        int evaluate(Stack stack) {
+            int value = scrutinee.evaluate(stack);
+            int index = Arrays.binarySearch(lows, value);
+            int branch = branches[index >= 0 ? index : -index - 2];
+            if (branch < 0) {
+                CompiledInterpreter.runtime(errors, "no alternative can be selected",
+                        loc, stack);
+            }
+            return exps[branch].evaluate(stack);
+        }
+    }
+
+    /**
+     * Address of a left value that is not simply a variable, such as an
+     * if expression choosing between variables
+     */
+    abstract static class Address {
+        abstract Value.AddressValue evaluate(Stack stack);
+    }
+
+    static final class VariableAddress extends Address {
+        private final Value.AddressValue address;
+
+        VariableAddress(int level, int offset) {
+            this.address = new Value.AddressValue(level, offset);
+        }
+
+        @Override
+        Value.AddressValue evaluate(Stack stack) {
+            return address;
+        }
+    }
+
+    static final class IfAddress extends Address {
+        private final ExecExp[] guards;
+        private final Address[] addresses;
+        private final Errors errors;
+        private final Location loc;
+
+        IfAddress(ExecExp[] guards, Address[] addresses, Errors errors, Location loc) {
+            this.guards = guards;
+            this.addresses = addresses;
+            this.errors = errors;
+            this.loc = loc;
+        }
+
+        @Override
+        Value.AddressValue evaluate(Stack stack) {
+            for (int i = 0; i < guards.length; i++) {
+                if (guards[i].evaluate(stack) == Type.TRUE_VALUE) {
+                    return addresses[i].evaluate(stack);
+                }
+            }
+            CompiledInterpreter.runtime(errors, "no alternative can be selected",
+                    loc, stack);
+            return null; // Never reached
+        }
+    }
+
+    /**
+     * Value of the variable at a computed address
+     */
+    static final class LoadAddress extends ExecExp {
+        private final Address lValue;
+        private final Errors errors;
+        private final Location loc;
+
+        LoadAddress(Address lValue, Errors errors, Location loc) {
+            this.lValue = lValue;
+            this.errors = errors;
+            this.loc = loc;
+        }
+
+        @Override
+        int evaluate(Stack stack) {
+            Value.AddressValue lValueAddress = lValue.evaluate(stack);
+            int address = stack.address(lValueAddress.getAddressLevel(),
+                    lValueAddress.getAddressOffset());
+            if (!stack.isAssigned(address)) {
+                CompiledInterpreter.runtime(errors,
+                        "variable accessed before assignment", loc, stack);
+            }
+            return stack.get(address);
+        }
+    }
+}
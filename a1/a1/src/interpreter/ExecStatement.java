@@ -0,0 +1,336 @@
+package interpreter;
+
+import java_cup.runtime.ComplexSymbolFactory.Location;
+import source.Errors;
+import syms.SymEntry;
+import syms.Type;
+
+import java.io.BufferedReader;
+import java.io.PrintStream;
+
+/**
+ * class ExecStatement - a statement compiled by the CompiledInterpreter
+ * for execution, with a subclass for each kind of statement.
+ * Like ExecExp, variables are resolved to a static level and offset.
+ */
+abstract class ExecStatement {
+
+    /**
+     * @param stack stack of the procedure executing the statement
+     */
+    abstract void execute(Stack stack);
+
+    /**
+     * Compiled body of a procedure, filled in once all procedures have
+     * been compiled so that calls may refer to any procedure.
+     */
+    static final class Procedure {
+        final SymEntry.ProcedureEntry entry;
+        /* Static level and size of the procedure's locals */
+        final int level;
+        final int space;
+        ExecStatement body;
+
+        Procedure(SymEntry.ProcedureEntry entry) {
+            this.entry = entry;
+            this.level = entry.getLocalScope().getLevel();
+            this.space = entry.getLocalScope().getVariableSpace();
+        }
+    }
+
+    /**
+     * Statement whose executions are counted and timed in a profile
+     */
+    static final class Profiled extends ExecStatement {
+        private final ExecStatement statement;
+        private final Profile profile;
+        private final Profile.Counter counter;
+
+        Profiled(ExecStatement statement, Profile profile, Profile.Counter counter) {
+            this.statement = statement;
+            this.profile = profile;
+            this.counter = counter;
+        }
+
+        @Override
+        void execute(Stack stack) {
+            profile.enter(counter);
+            statement.execute(stack);
+            profile.exit();
+        }
+    }
+
+    static final class Assign extends ExecStatement {
+        private final int level;
+        private final int offset;
+        private final ExecExp exp;
+
+        Assign(int level, int offset, ExecExp exp) {
+            this.level = level;
+            this.offset = offset;
+            this.exp = exp;
+        }
+
+        @Override
+        void execute(Stack stack) {
+            int value = exp.evaluate(stack);
+            stack.set(stack.address(level, offset), value);
+        }
+    }
+
+    /**
+     * Assignment to a computed address. The address is evaluated before
+     * the expression.
+     */
+    static final class AssignAddress extends ExecStatement {
+        private final ExecExp.Address lValue;
+        private final ExecExp exp;
+
+        AssignAddress(ExecExp.Address lValue, ExecExp exp) {
+            this.lValue = lValue;
+            this.exp = exp;
+        }
+
+        @Override
+        void execute(Stack stack) {
+            Value.AddressValue address = lValue.evaluate(stack);
+            int value = exp.evaluate(stack);
+            stack.set(stack.address(address.getAddressLevel(),
+                    address.getAddressOffset()), value);
+        }
+    }
+
+    /**
+     * Multiple assignment. All the expressions are evaluated before any
+     * variable is assigned. Assigning the same variable twice is a runtime
+     * error, reported after the expressions have been evaluated.
+     */
+    static final class MultipleAssign extends ExecStatement {
+        private final int[] levels;
+        private final int[] offsets;
+        private final ExecExp[] exps;
+        /* Index of the first repeated variable, or -1 if none */
+        private final int duplicate;
+        private final Errors errors;
+        private final Location duplicateLoc;
+        /* Values of the expressions, assigned once all are evaluated */
+        private final int[] values;
+
+        MultipleAssign(int[] levels, int[] offsets, ExecExp[] exps, int duplicate,
+                       Errors errors, Location duplicateLoc) {
+            this.levels = levels;
+            this.offsets = offsets;
+            this.exps = exps;
+            this.duplicate = duplicate;
+            this.errors = errors;
+            this.duplicateLoc = duplicateLoc;
+            this.values = new int[exps.length];
+        }
+
+        @Override
+        void execute(Stack stack) {
+            /* Expressions cannot call procedures, so the statement cannot be
+             * re-entered while the values array is in use. */
+            for (int i = 0; i < exps.length; i++) {
+                values[i] = exps[i].evaluate(stack);
+            }
+            if (duplicate >= 0) {
+                CompiledInterpreter.runtime(errors,
+                        "simultaneous assignment to the same left value",
+                        duplicateLoc, stack);
+            }
+            for (int i = 0; i < exps.length; i++) {
+                stack.set(stack.address(levels[i], offsets[i]), values[i]);
+            }
+        }
+    }
+
+    /**
+     * Multiple assignment to computed addresses, checking at run time
+     * that no address is assigned twice.
+     */
+    static final class MultipleAssignAddresses extends ExecStatement {
+        private final ExecExp.Address[] lValues;
+        private final ExecExp[] exps;
+        private final Errors errors;
+        private final Location[] locs;
+        /* Addresses and values of the expressions, assigned once all are
+         * evaluated */
+        private final Value.AddressValue[] addresses;
+        private final int[] values;
+
+        MultipleAssignAddresses(ExecExp.Address[] lValues, ExecExp[] exps,
+                                Errors errors, Location[] locs) {
+            this.lValues = lValues;
+            this.exps = exps;
+            this.errors = errors;
+            this.locs = locs;
+            this.addresses = new Value.AddressValue[exps.length];
+            this.values = new int[exps.length];
+        }
+
+        @Override
+        void execute(Stack stack) {
+            for (int i = 0; i < exps.length; i++) {
+                addresses[i] = lValues[i].evaluate(stack);
+                values[i] = exps[i].evaluate(stack);
+            }
+            int duplicate = Interpreter.findDuplicate(addresses, exps.length);
+            if (duplicate >= 0) {
+                CompiledInterpreter.runtime(errors,
+                        "simultaneous assignment to the same left value",
+                        locs[duplicate], stack);
+            }
+            for (int i = 0; i < exps.length; i++) {
+                stack.set(stack.address(addresses[i].getAddressLevel(),
+                        addresses[i].getAddressOffset()), values[i]);
+            }
+        }
+    }
+
+    static final class Read extends ExecStatement {
+        private final int level;
+        private final int offset;
+        private final BufferedReader in;
+        private final Errors errors;
+        private final Location loc;
+
+        Read(int level, int offset, BufferedReader in, Errors errors, Location loc) {
+            this.level = level;
+            this.offset = offset;
+            this.in = in;
+            this.errors = errors;
+            this.loc = loc;
+        }
+
+        @Override
+        void execute(Stack stack) {
+            int value = 0;
+            try {
+                value = Integer.parseInt(in.readLine());
+            } catch (Exception e) {
+                CompiledInterpreter.runtime(errors,
+                        "invalid value read - must be an integer", loc, stack);
+            }
+            stack.set(stack.address(level, offset), value);
+        }
+    }
+
+    /**
+     * Read into a computed address, evaluated after the value is read
+     */
+    static final class ReadAddress extends ExecStatement {
+        private final ExecExp.Address lValue;
+        private final BufferedReader in;
+        private final Errors errors;
+        private final Location loc;
+
+        ReadAddress(ExecExp.Address lValue, BufferedReader in, Errors errors,
+                    Location loc) {
+            this.lValue = lValue;
+            this.in = in;
+            this.errors = errors;
+            this.loc = loc;
+        }
+
+        @Override
+        void execute(Stack stack) {
+            int value = 0;
+            try {
+                value = Integer.parseInt(in.readLine());
+            } catch (Exception e) {
+                CompiledInterpreter.runtime(errors,
+                        "invalid value read - must be an integer", loc, stack);
+            }
+            Value.AddressValue address = lValue.evaluate(stack);
+            stack.set(stack.address(address.getAddressLevel(),
+                    address.getAddressOffset()), value);
+        }
+    }
+
+    static final class Write extends ExecStatement {
+        private final ExecExp exp;
+        private final PrintStream out;
+
+        Write(ExecExp exp, PrintStream out) {
+            this.exp = exp;
+            this.out = out;
+        }
+
+        @Override
+        void execute(Stack stack) {
+            out.println(exp.evaluate(stack));
+        }
+    }
+
+    /**
+     * Call of a procedure
+     */
+    static final class Call extends ExecStatement {
+        private final Procedure procedure;
+
+        Call(Procedure procedure) {
+            this.procedure = procedure;
+        }
+
+        @Override
+        void execute(Stack stack) {
+            stack.enter(procedure.entry, procedure.level, procedure.space);
+            procedure.body.execute(stack);
+            stack.exit(procedure.level);
+        }
+    }
+
+    static final class List extends ExecStatement {
+        private final ExecStatement[] statements;
+
+        List(ExecStatement[] statements) {
+            this.statements = statements;
+        }
+
+        @Override
+        void execute(Stack stack) {
+            for (ExecStatement statement : statements) {
+                statement.execute(stack);
+            }
+        }
+    }
+
+    static final class If extends ExecStatement {
+        private final ExecExp condition;
+        private final ExecStatement thenStmt;
+        private final ExecStatement elseStmt;
+
+        If(ExecExp condition, ExecStatement thenStmt, ExecStatement elseStmt) {
+            this.condition = condition;
+            this.thenStmt = thenStmt;
+            this.elseStmt = elseStmt;
+        }
+
+        @Override
+        void execute(Stack stack) {
+            if (condition.evaluate(stack) == Type.TRUE_VALUE) {
+                thenStmt.execute(stack);
+            } else {
+                elseStmt.execute(stack);
+            }
+        }
+    }
+
+    static final class While extends ExecStatement {
+        private final ExecExp condition;
+        private final ExecStatement loopStmt;
+
+        While(ExecExp condition, ExecStatement loopStmt) {
+            this.condition = condition;
+            this.loopStmt = loopStmt;
+        }
+
+        @Override
+        void execute(Stack stack) {
+            while (condition.evaluate(stack) == Type.TRUE_VALUE) {
+                loopStmt.execute(stack);
+            }
+        }
+    }
+}
@@ -28,10 +28,16 @@ class Frame {
     private final SymEntry.ProcedureEntry procedure;
 
     /**
-     * Variable assignments - null entries in the array
-     * represent unassigned variables
+     * Values of the variables, indexed by offset
      */
-    private final Value[] entries;
+    private final int[] slots;
+
+    /**
+     * Bitmap of the variables that have been assigned, with bit
+     * (offset % 64) of word (offset / 64) set once the variable at the
+     * offset has been assigned
+     */
+    private final long[] assigned;
 
     /**
      * This constructs a single scope within a symbol table
@@ -48,8 +54,10 @@ class Frame {
         this.level = procedure.getLocalScope().getLevel();
         this.procedure = procedure;
 
-        /* Initially all entries are unassigned (represented by null) */
-        this.entries = new Value[procedure.getLocalScope().getVariableSpace()];
+        /* Initially all entries are unassigned */
+        int space = procedure.getLocalScope().getVariableSpace();
+        this.slots = new int[space];
+        this.assigned = new long[(space + 63) >>> 6];
     }
 
     /**
@@ -92,7 +100,7 @@ class Frame {
      * @return value stored at the given offset, entry. null if not assigned.
      */
     Value lookup(int offset) {
-        return entries[offset];
+        return isAssigned(offset) ? new Value.IntegerValue(slots[offset]) : null;
     }
 
     /**
@@ -102,31 +110,74 @@ class Frame {
      * @param value  to assign to the offset.
      */
     void assign(int offset, Value value) {
-        entries[offset] = value;
+        set(offset, value.getInteger());
+    }
+
+    /**
+     * @return true iff the variable at the offset has been assigned
+     */
+    boolean isAssigned(int offset) {
+        return (assigned[offset >>> 6] & (1L << offset)) != 0;
     }
 
     /**
-     * Dump contents of this frame
+     * @return the value of the variable at the offset
+     * @requires isAssigned(offset)
+     */
+    int get(int offset) {
+        return slots[offset];
+    }
+
+    /**
+     * Assign the value to the variable at the offset
+     */
+    void set(int offset, int value) {
+        slots[offset] = value;
+        assigned[offset >>> 6] |= 1L << offset;
+    }
+
+    /**
+     * Dump contents of this frame and those of its callers, innermost
+     * first. As for the Stack, only the innermost and outermost frames of
+     * a deep stack are dumped, followed by the number of activations.
      */
     @Override
     public String toString() {
-        StringBuilder result = new StringBuilder("PROC ");
-        result.append(procedure.getIdent()).append(" : level ")
+        int depth = 0;
+        for (Frame frame = this; frame != null; frame = frame.dynamicLink) {
+            depth++;
+        }
+        StringBuilder result = new StringBuilder();
+        int i = depth - 1;
+        for (Frame frame = this; frame != null; frame = frame.dynamicLink, i--) {
+            if (depth <= Stack.DUMP_LIMIT || i < Stack.DUMP_ENDS ||
+                    i >= depth - Stack.DUMP_ENDS) {
+                frame.appendFrame(result);
+            } else if (i == depth - Stack.DUMP_ENDS - 1) {
+                Stack.appendOmitted(result, depth - 2 * Stack.DUMP_ENDS);
+            }
+        }
+        if (depth > Stack.DUMP_LIMIT) {
+            Stack.appendDepth(result, depth);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Append the dump of the variables of this frame alone
+     */
+    private void appendFrame(StringBuilder result) {
+        result.append("PROC ").append(procedure.getIdent()).append(" : level ")
                 .append(level).append(System.lineSeparator());
 
         for (SymEntry entry : procedure.getLocalScope().getEntries()) {
             if (entry instanceof SymEntry.VarEntry variable) {
-                Value value = entries[variable.getOffset()];
+                int offset = variable.getOffset();
                 result.append("\t").append(variable.getIdent());
                 result.append(" = ");
-                result.append(value == null ? "unassigned" : value);
+                result.append(isAssigned(offset) ? Integer.toString(slots[offset]) : "unassigned");
                 result.append(System.lineSeparator());
             }
         }
-        if (dynamicLink != null) {
-            result.append(dynamicLink);
-        }
-        return result.toString();
     }
 }
-
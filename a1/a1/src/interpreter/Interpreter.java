@@ -3,6 +3,7 @@ package interpreter;
 import java.util.*;
 
 import java_cup.runtime.ComplexSymbolFactory.Location;
+import source.ErrorHandler;
 import source.VisitorDebugger;
 import source.Errors;
 import syms.SymEntry;
@@ -46,6 +47,13 @@ public class Interpreter implements StatementVisitor, ExpTransform<Value> {
      **/
     private Frame currentFrame;
 
+    /**
+     * Left values and values of the multiple assignment being executed,
+     * reused by all multiple assignments as they cannot be nested
+     */
+    private Value[] lValues = new Value[0];
+    private Value[] rValues = new Value[0];
+
     /**
      * Construct a new interpreter
      *
@@ -72,7 +80,13 @@ public class Interpreter implements StatementVisitor, ExpTransform<Value> {
         /* Set up the main frame */
         currentFrame = new Frame(null, null, procEntry);
         /* Execute main procedure code body */
-        visitBlockNode(procEntry.getBlock());
+        try {
+            visitBlockNode(procEntry.getBlock());
+        } catch (StackOverflowError e) {
+            /* The current frame is still that active when it overflowed */
+            runtime(CompiledInterpreter.STACK_OVERFLOW, ErrorHandler.NO_LOCATION,
+                    currentFrame);
+        }
         endExec("Program");
     }
 
@@ -141,39 +155,52 @@ public class Interpreter implements StatementVisitor, ExpTransform<Value> {
      */
     public void visitMultipleAssignmentNode(StatementNode.MultipleAssignmentNode node) {
         beginExec("MultipleAssignment");
-
-        List<Value> lValues = new ArrayList<>();
-        List<Value> rValues = new ArrayList<>();
-        List<Location> lLocations = new ArrayList<>();
+        List<StatementNode.AssignmentNode> assignments = node.getAssignmentNodeList();
+        int count = assignments.size();
+        if (lValues.length < count) {
+            lValues = new Value[count];
+            rValues = new Value[count];
+        }
 
         //evaluate every left and right sub-expression
-        for (StatementNode.AssignmentNode a: node.getAssignmentNodeList()) {
-            lValues.add(a.getLValue().evaluate(this));
-            rValues.add(a.getExp().evaluate(this));
-            lLocations.add(a.getLValue().getLocation());
+        for (int i = 0; i < count; i++) {
+            StatementNode.AssignmentNode a = assignments.get(i);
+            lValues[i] = a.getLValue().evaluate(this);
+            rValues[i] = a.getExp().evaluate(this);
         }
 
-        // Check for duplicates
-        Set<String> seen = new HashSet<>();
-        for (int i=0; i < lValues.size(); i++) {
-
-            // duplicate checking using offset and level as a key
-            Value lVal = lValues.get(i);
-            String addressKey = lVal.getAddressLevel() + ":" + lVal.getAddressOffset();
-            if (!seen.add(addressKey)) {
-                runtime("simultaneous assignment to the same left value",
-                        lLocations.get(i), currentFrame);
-            }
+        // Check for duplicates, found by the static checker if the left
+        // values are all variables
+        int duplicate = node.hasVariableTargets() ? node.getDuplicate() :
+                findDuplicate(lValues, count);
+        if (duplicate >= 0) {
+            runtime("simultaneous assignment to the same left value",
+                    assignments.get(duplicate).getLValue().getLocation(), currentFrame);
         }
 
         // Do assignments
-        for (int i = 0; i < lValues.size(); i++) {
-            assignValue(lValues.get(i), rValues.get(i));
+        for (int i = 0; i < count; i++) {
+            assignValue(lValues[i], rValues[i]);
         }
 
         endExec("MultipleAssignment");
     }
 
+    /**
+     * @return the index of the first of the count addresses that is the
+     * same as an earlier one, or -1 if there is none
+     */
+    static int findDuplicate(Value[] addresses, int count) {
+        for (int i = 1; i < count; i++) {
+            for (int j = 0; j < i; j++) {
+                if (addresses[i].equals(addresses[j])) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
     /**
      * Execute code for a read statement - read an int from standard input
      */
@@ -370,7 +397,12 @@ public class Interpreter implements StatementVisitor, ExpTransform<Value> {
         Value lValue = node.getLeftValue().evaluate(this);
         /* Resolve the frame containing the variable node */
         Frame frame = currentFrame.lookupFrame(lValue.getAddressLevel());
-        /* Retrieve the variables value from the frame */
+        /* Retrieve the variables value from the frame, which the static
+         * checker may have found must have been assigned */
+        if (node.isDefinitelyAssigned()) {
+            endExec("Dereference");
+            return new IntegerValue(frame.get(lValue.getAddressOffset()));
+        }
         Value result = frame.lookup(lValue.getAddressOffset());
         if (result == null) {
             runtime("variable accessed before assignment", node.getLocation(), currentFrame);
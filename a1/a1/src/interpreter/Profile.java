@@ -0,0 +1,113 @@
+package interpreter;
+
+import java_cup.runtime.ComplexSymbolFactory.Location;
+import source.Errors;
+
+import java.util.*;
+
+/**
+ * Profile of a run of the CompiledInterpreter, counting the executions of
+ * each statement and expression and the time spent in each, excluding
+ * the time spent in the statements and expressions within it.
+ * The nodes are only profiled when the program is compiled with a
+ * profile, so there is no cost when not profiling.
+ * After the run the source program is listed with, for each line, the
+ * greatest number of times a node on the line was executed and the total
+ * time spent in the nodes on the line.
+ */
+public class Profile {
+    /**
+     * Width of the annotation of each line of the listing
+     */
+    private static final int ANNOTATION_WIDTH = 24;
+
+    /**
+     * Execution count and time of a node
+     */
+    static final class Counter {
+        final int line;
+        long count = 0;
+        long nanos = 0;
+
+        Counter(int line) {
+            this.line = line;
+        }
+    }
+
+    /**
+     * Counters of all the profiled nodes
+     */
+    private final List<Counter> counters = new ArrayList<>();
+
+    /**
+     * Counters of the nodes being executed, innermost last
+     */
+    private Counter[] active = new Counter[64];
+
+    /**
+     * Number of nodes being executed
+     */
+    private int depth = 0;
+
+    /**
+     * Time at which the time of the innermost node was last charged
+     */
+    private long last;
+
+    /**
+     * @return a new counter for a node at the location
+     */
+    Counter counter(Location loc) {
+        Counter counter = new Counter(loc.getLine());
+        counters.add(counter);
+        return counter;
+    }
+
+    /**
+     * Start the execution of the node with the counter
+     */
+    void enter(Counter counter) {
+        long now = System.nanoTime();
+        if (depth > 0) {
+            active[depth - 1].nanos += now - last;
+        }
+        if (depth == active.length) {
+            active = Arrays.copyOf(active, 2 * depth);
+        }
+        active[depth++] = counter;
+        counter.count++;
+        last = now;
+    }
+
+    /**
+     * End the execution of the innermost node
+     */
+    void exit() {
+        long now = System.nanoTime();
+        active[--depth].nanos += now - last;
+        last = now;
+    }
+
+    /**
+     * List the source program annotated with the number of times each
+     * line was executed and the time spent executing it.
+     */
+    public void report(Errors errors) {
+        Map<Integer, Long> counts = new HashMap<>();
+        Map<Integer, Long> nanos = new HashMap<>();
+        long total = 0;
+        for (Counter counter : counters) {
+            counts.merge(counter.line, counter.count, Math::max);
+            nanos.merge(counter.line, counter.nanos, Long::sum);
+            total += counter.nanos;
+        }
+        Map<Integer, String> annotations = new HashMap<>();
+        for (Map.Entry<Integer, Long> entry : counts.entrySet()) {
+            annotations.put(entry.getKey(), String.format("%11d %10.3f ",
+                    entry.getValue(), nanos.get(entry.getKey()) / 1e6));
+        }
+        errors.println("Profile: executions and time (ms) of each line");
+        errors.listSource(annotations, ANNOTATION_WIDTH);
+        errors.println(String.format("Total time %.3f ms", total / 1e6));
+    }
+}
@@ -0,0 +1,217 @@
+package interpreter;
+
+import syms.SymEntry;
+
+import java.util.Arrays;
+
+/**
+ * Stack holds the variables of all active procedures of the compiled
+ * interpreter in a single growable array, with a frame per activation
+ * starting at a base address within it, and a bitmap of the addresses
+ * that have been assigned. A display, indexed by static level, holds the
+ * base address of the frame of the innermost active procedure at each
+ * level, so a variable is found directly from its level and offset
+ * rather than by following static links. Calling a procedure saves the
+ * display entry for its level and moves the top of the stack past its
+ * frame; returning restores both.
+ */
+final class Stack {
+    /**
+     * Initial number of words of the stack
+     */
+    private static final int INITIAL_SIZE = 1024;
+
+    /**
+     * Initial number of activations recorded
+     */
+    private static final int INITIAL_DEPTH = 64;
+
+    /**
+     * Number of activations above which a dump omits the middle frames
+     */
+    static final int DUMP_LIMIT = 40;
+
+    /**
+     * Number of frames dumped at each end of a deep stack
+     */
+    static final int DUMP_ENDS = 10;
+
+    /**
+     * Values of the variables
+     */
+    private int[] slots = new int[INITIAL_SIZE];
+
+    /**
+     * Bitmap of the addresses that have been assigned
+     */
+    private long[] assigned = new long[INITIAL_SIZE >>> 6];
+
+    /**
+     * Address of the first word past the top frame
+     */
+    private int top = 0;
+
+    /**
+     * Base address of the innermost active frame at each static level
+     */
+    private final int[] display;
+
+    /**
+     * Procedure of each activation, outermost first
+     */
+    private SymEntry.ProcedureEntry[] procedures =
+            new SymEntry.ProcedureEntry[INITIAL_DEPTH];
+
+    /**
+     * Base address of the frame of each activation
+     */
+    private int[] bases = new int[INITIAL_DEPTH];
+
+    /**
+     * Display entry replaced by each activation, restored on return
+     */
+    private int[] savedDisplay = new int[INITIAL_DEPTH];
+
+    /**
+     * Number of activations
+     */
+    private int depth = 0;
+
+    /**
+     * @param maxLevel greatest static level of a procedure's locals
+     */
+    Stack(int maxLevel) {
+        display = new int[maxLevel + 1];
+    }
+
+    /**
+     * Push a frame for an activation of the procedure, whose locals are
+     * at the static level and take up space words.
+     */
+    void enter(SymEntry.ProcedureEntry procedure, int level, int space) {
+        if (depth == bases.length) {
+            int length = 2 * depth;
+            procedures = Arrays.copyOf(procedures, length);
+            bases = Arrays.copyOf(bases, length);
+            savedDisplay = Arrays.copyOf(savedDisplay, length);
+        }
+        int base = top;
+        top += space;
+        if (top > slots.length) {
+            int length = Math.max(2 * slots.length, (top + 63) & ~63);
+            slots = Arrays.copyOf(slots, length);
+            assigned = Arrays.copyOf(assigned, length >>> 6);
+        }
+        /* Initially all entries of the frame are unassigned */
+        for (int address = base; address < top; address++) {
+            assigned[address >>> 6] &= ~(1L << address);
+        }
+        procedures[depth] = procedure;
+        bases[depth] = base;
+        savedDisplay[depth] = display[level];
+        depth++;
+        display[level] = base;
+    }
+
+    /**
+     * Pop the frame of the innermost activation, whose locals are
+     * at the static level.
+     */
+    void exit(int level) {
+        depth--;
+        top = bases[depth];
+        display[level] = savedDisplay[depth];
+    }
+
+    /**
+     * @return the address of the variable at the offset in the innermost
+     * active frame at the static level
+     */
+    int address(int level, int offset) {
+        return display[level] + offset;
+    }
+
+    /**
+     * @return true iff the variable at the address has been assigned
+     */
+    boolean isAssigned(int address) {
+        return (assigned[address >>> 6] & (1L << address)) != 0;
+    }
+
+    /**
+     * @return the value of the variable at the address
+     * @requires isAssigned(address)
+     */
+    int get(int address) {
+        return slots[address];
+    }
+
+    /**
+     * Assign the value to the variable at the address
+     */
+    void set(int address, int value) {
+        slots[address] = value;
+        assigned[address >>> 6] |= 1L << address;
+    }
+
+    /**
+     * Dump the frames of the active procedures, innermost first,
+     * in the same form as Frame. Only the innermost and outermost
+     * DUMP_ENDS frames of a deep stack are dumped, followed by the
+     * number of activations.
+     */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        if (depth <= DUMP_LIMIT) {
+            for (int i = depth - 1; i >= 0; i--) {
+                appendFrame(result, i);
+            }
+            return result.toString();
+        }
+        for (int i = depth - 1; i >= depth - DUMP_ENDS; i--) {
+            appendFrame(result, i);
+        }
+        appendOmitted(result, depth - 2 * DUMP_ENDS);
+        for (int i = DUMP_ENDS - 1; i >= 0; i--) {
+            appendFrame(result, i);
+        }
+        appendDepth(result, depth);
+        return result.toString();
+    }
+
+    /**
+     * Append the dump of the frame of the i'th activation
+     */
+    private void appendFrame(StringBuilder result, int i) {
+        SymEntry.ProcedureEntry procedure = procedures[i];
+        result.append("PROC ").append(procedure.getIdent()).append(" : level ")
+                .append(procedure.getLocalScope().getLevel())
+                .append(System.lineSeparator());
+        for (SymEntry entry : procedure.getLocalScope().getEntries()) {
+            if (entry instanceof SymEntry.VarEntry variable) {
+                int address = bases[i] + variable.getOffset();
+                result.append("\t").append(variable.getIdent());
+                result.append(" = ");
+                result.append(isAssigned(address) ?
+                        Integer.toString(slots[address]) : "unassigned");
+                result.append(System.lineSeparator());
+            }
+        }
+    }
+
+    /**
+     * Append the line of a dump standing for the omitted frames
+     */
+    static void appendOmitted(StringBuilder result, int omitted) {
+        result.append("... ").append(omitted).append(" frames omitted ...")
+                .append(System.lineSeparator());
+    }
+
+    /**
+     * Append the line of a dump giving the number of activations
+     */
+    static void appendDepth(StringBuilder result, int depth) {
+        result.append("call depth ").append(depth).append(System.lineSeparator());
+    }
+}
@@ -0,0 +1,146 @@
+package pl0;
+
+import source.ErrorHandler;
+import source.Source;
+import tree.DeclNode;
+import tree.StaticChecker;
+import tree.TreeCache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+
+/**
+ * class CacheBenchmark - Compares the time to start running a large program
+ * when it is parsed and statically checked (cold) with the time to load
+ * its checked tree from a TreeCache (cached).
+ * The programs are generated, with the given numbers of procedures.
+ * Usage: java pl0.CacheBenchmark [procedures ...]
+ */
+public class CacheBenchmark {
+    /**
+     * Numbers of procedures of the programs if none are given
+     */
+    private static final int[] DEFAULT_SIZES = {1000, 5000, 20000};
+
+    /**
+     * Number of times each start is timed, of which the fastest is reported
+     */
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws IOException {
+        int[] sizes = DEFAULT_SIZES;
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+        File directory = Files.createTempDirectory("pl0-benchmark").toFile();
+        TreeCache cache = new TreeCache(new File(directory, "cache"));
+        System.out.printf("%10s %10s %12s %12s %12s %12s%n", "procedures", "lines",
+                "source (KB)", "cache (KB)", "cold (ms)", "cached (ms)");
+        for (int procedures : sizes) {
+            File srcFile = new File(directory, "bench" + procedures + ".pl0");
+            int lines = generate(srcFile, procedures);
+            long cold = Long.MAX_VALUE;
+            for (int run = 0; run < RUNS; run++) {
+                long start = System.nanoTime();
+                DeclNode.ProcedureNode tree = parseAndCheck(srcFile);
+                cold = Math.min(cold, System.nanoTime() - start);
+                if (run == 0) {
+                    cache.save(TreeCache.hash(srcFile), tree);
+                }
+            }
+            long cached = Long.MAX_VALUE;
+            for (int run = 0; run < RUNS; run++) {
+                long start = System.nanoTime();
+                DeclNode.ProcedureNode tree = load(cache, srcFile);
+                cached = Math.min(cached, System.nanoTime() - start);
+                if (tree == null) {
+                    throw new IllegalStateException("tree not cached");
+                }
+            }
+            File cacheFile = new File(new File(directory, "cache"), TreeCache.hash(srcFile));
+            System.out.printf("%10d %10d %12d %12d %12.1f %12.1f%n", procedures, lines,
+                    srcFile.length() / 1024, cacheFile.length() / 1024,
+                    cold / 1e6, cached / 1e6);
+        }
+    }
+
+    /**
+     * Start a program as Runner does without a cache: parse and check it
+     */
+    private static DeclNode.ProcedureNode parseAndCheck(File srcFile) throws IOException {
+        Source source = open(srcFile);
+        ErrorHandler errors = (ErrorHandler) ErrorHandler.getErrorHandler();
+        DeclNode.ProcedureNode tree = new PL0_RD().parse(source);
+        new StaticChecker(errors).visitProgramNode(tree);
+        if (errors.hadErrors()) {
+            throw new IllegalStateException("generated program has errors");
+        }
+        return tree;
+    }
+
+    /**
+     * Start a program as Runner does with a cache: hash the source, load
+     * its tree and read the source through for error messages
+     */
+    private static DeclNode.ProcedureNode load(TreeCache cache, File srcFile)
+            throws IOException {
+        Source source = open(srcFile);
+        DeclNode.ProcedureNode tree = cache.load(TreeCache.hash(srcFile));
+        source.skip(Long.MAX_VALUE);
+        return tree;
+    }
+
+    private static Source open(File srcFile) throws IOException {
+        Source source = new Source(new FileInputStream(srcFile), srcFile.getCanonicalPath());
+        ErrorHandler errors = (ErrorHandler) ErrorHandler.getErrorHandler();
+        errors.resetErrorHandler(new PrintStream(OutputStream.nullOutputStream()),
+                source, false);
+        return source;
+    }
+
+    /**
+     * Write a program with the number of procedures, each with local
+     * variables and types, and a main program calling all of them.
+     *
+     * @return the number of lines written
+     */
+    private static int generate(File srcFile, int procedures) throws IOException {
+        int lines = 0;
+        try (PrintWriter out = new PrintWriter(srcFile)) {
+            out.println("var x: int; y: int; n: S;");
+            out.println("type S = [0..1000];");
+            lines += 2;
+            for (int i = 0; i < procedures; i++) {
+                out.println("procedure p" + i + "() =");
+                out.println("  var a: int; b: T; c: boolean;");
+                out.println("  type T = [-10.." + (i + 10) + "];");
+                out.println("  begin");
+                out.println("    a := " + i + " * 2 + x;");
+                out.println("    b := a / 3;");
+                out.println("    c := a < b;");
+                out.println("    if c then x := a else x := b - 1;");
+                out.println("    while a > 0 do a := a - 7;");
+                out.println("    x := y | y := x | n := b + 1;");
+                out.println("    y := ife a = 0 then 1 [] a < 0 then -1 [] true then b fi");
+                out.println("  end;");
+                lines += 12;
+            }
+            out.println("begin");
+            for (int i = 0; i < procedures; i++) {
+                out.println("  call p" + i + "();");
+            }
+            out.println("  write x");
+            out.println("end");
+            lines += procedures + 3;
+        }
+        return lines;
+    }
+}
@@ -1,13 +1,22 @@
 package pl0;
 
+import interpreter.CompiledInterpreter;
 import interpreter.Interpreter;
+import interpreter.Profile;
+import machine.StackMachine;
 import parse.Parser;
 import parse.Scanner;
 import parse.TokenStream;
+import source.ErrorHandler;
 import source.Errors;
 import source.Source;
+import tree.CodeGenerator;
 import tree.DeclNode;
+import tree.Procedures;
+import tree.TreeCache;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
 
@@ -23,8 +32,35 @@ public class PL0_RD extends Runner {
      **/
     private static final String PROGRAM_NAME = "pl0.PL0_RD";
 
+    /**
+     * Default size in megabytes of the stack of the interpreter thread
+     */
+    private static final int DEFAULT_STACK_SIZE = 256;
+
     public PL0_RD() {
         configurations.put('i', new Option("turn off interpreting", false));
+        configurations.put('w', new Option("interpret by walking the tree rather than compiling it", false));
+        configurations.put('x', new Option("-x<n> interpret on a stack of n megabytes (default " +
+                DEFAULT_STACK_SIZE + ")", false));
+        configurations.put('p', new Option("profile the run of the compiled interpreter, listing the " +
+                "executions and time of each line (not with -w or -c)", false));
+        configurations.put('c', new Option("compile to stack machine code and run it rather than interpreting", false));
+        configurations.put('v', new Option("output of generated stack machine code", false));
+        configurations.put('k', new Option("-k[<dir>] cache the checked program in dir (default ~/.pl0-cache), " +
+                "reusing it while the source is unchanged", false));
+    }
+
+    @Override
+    String parseArguments(String[] args, String programName,
+                          PrintStream outStream) {
+        String srcFile = super.parseArguments(args, programName, outStream);
+        /* Only the compiled interpreter can be profiled */
+        if (isFlagSet('p') && (isFlagSet('w') || isFlagSet('c'))) {
+            outStream.println("Profiling (-p) is not supported with -" +
+                    (isFlagSet('w') ? 'w' : 'c') + "; it profiles only the compiled interpreter.");
+            System.exit(1);
+        }
+        return srcFile;
     }
 
     @Override
@@ -40,6 +76,38 @@ public class PL0_RD extends Runner {
         return result;
     }
 
+    /**
+     * @return the cache in the directory given with -k, otherwise the
+     * user's cache
+     */
+    private TreeCache treeCache() {
+        String directory = getFlagString('k');
+        return directory == null ? TreeCache.forUser() : new TreeCache(new File(directory));
+    }
+
+    @Override
+    DeclNode.ProcedureNode loadCheckedTree(File srcFile) {
+        if (!isFlagSet('k')) {
+            return null;
+        }
+        try {
+            return treeCache().load(TreeCache.hash(srcFile));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    void saveCheckedTree(File srcFile, DeclNode.ProcedureNode tree) {
+        if (isFlagSet('k')) {
+            try {
+                treeCache().save(TreeCache.hash(srcFile), tree);
+            } catch (IOException e) {
+                // Run without caching
+            }
+        }
+    }
+
     @Override
     public boolean execute(String fileName, DeclNode.ProcedureNode tree, InputStream input,
                            PrintStream output, Errors errors) {
@@ -47,17 +115,67 @@ public class PL0_RD extends Runner {
             return false;
         }
 
+        if (isFlagSet('c')) {
+            return runOnStackMachine(tree, input, output, errors);
+        }
+
         //output.println("Running " + fileName); // Larissa changed so that tests work
         output.println("Running ...");
-        Interpreter interpreter = new Interpreter(errors, input, output);
+        /* The interpreters recurse on the Java stack for each procedure
+         * call and nested expression, so they run on a thread of their own
+         * whose stack is large enough for deeply recursive programs. */
+        Throwable[] failure = new Throwable[1];
+        Profile profile = isFlagSet('p') ? new Profile() : null;
+        Runnable interpret = () -> {
+            try {
+                if (isFlagSet('w')) {
+                    new Interpreter(errors, input, output).executeCode(tree);
+                } else {
+                    new CompiledInterpreter(errors, input, output, profile).executeCode(tree);
+                }
+            } catch (Throwable e) {
+                failure[0] = e;
+            }
+        };
+        long stackSize = (long) getFlagValue('x', DEFAULT_STACK_SIZE) << 20;
+        Thread interpreter = new Thread(null, interpret, "interpreter", stackSize);
+        interpreter.start();
         try {
-            interpreter.executeCode(tree);
-        } catch (Error error) {
+            interpreter.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        if (profile != null) {
+            profile.report(errors);
+        }
+        /* A fatal error has already been reported by the error handler,
+         * but any other error, such as running out of memory, has not */
+        if (failure[0] instanceof ErrorHandler.FatalError) {
             return false;
+        } else if (failure[0] instanceof Error e) {
+            throw e;
+        } else if (failure[0] instanceof RuntimeException e) {
+            throw e;
         }
         return true;
     }
 
+    /**
+     * Compile the abstract syntax tree into code for the stack machine
+     * and run it. The stack machine keeps its stack in its own memory,
+     * so it needs no thread of its own.
+     */
+    private boolean runOnStackMachine(DeclNode.ProcedureNode tree, InputStream input,
+                                      PrintStream output, Errors errors) {
+        Procedures code = new CodeGenerator(errors).generateCode(tree);
+        StackMachine machine = new StackMachine(errors, input, output,
+                isFlagSet('v'), code);
+        output.println("Running ...");
+        machine.run();
+        return true;
+    }
+
     /**
      * PL0 Recursive Decent main procedure
      */
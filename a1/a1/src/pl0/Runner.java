@@ -43,6 +43,51 @@ public abstract class Runner {
         }
     }
 
+    /**
+     * Set the value given with a configuration flag, e.g. "512" for "-x512".
+     * If the flag does not already exist, no change will be made.
+     *
+     * @param flagCode Character representing the configuration.
+     * @param value    Value for this configuration.
+     */
+    private void setFlagValue(Character flagCode, String value) {
+        if (configurations.containsKey(flagCode)) {
+            configurations.get(flagCode).setValue(value);
+        }
+    }
+
+    /**
+     * Query the integer value given with a configuration flag.
+     *
+     * @param flagCode     Character representing the configuration.
+     * @param defaultValue Value returned if the flag was not given a value
+     *                     or the value given is not an integer.
+     * @return The value given with the flag, otherwise defaultValue.
+     */
+    int getFlagValue(Character flagCode, int defaultValue) {
+        Option option = configurations.get(flagCode);
+        if (option == null || option.getValue() == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(option.getValue());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Query the value given with a configuration flag.
+     *
+     * @param flagCode Character representing the configuration.
+     * @return The value given with the flag, or null if the flag was not
+     * given a value.
+     */
+    String getFlagString(Character flagCode) {
+        Option option = configurations.get(flagCode);
+        return option == null ? null : option.getValue();
+    }
+
     /**
      * Query if a configuration flag is set.
      *
@@ -82,6 +127,44 @@ public abstract class Runner {
      */
     public abstract DeclNode.ProcedureNode parse(Source src);
 
+    /**
+     * Load the checked abstract syntax tree of the source file, if one
+     * was saved when the file had the same contents.
+     * By default no trees are cached.
+     *
+     * @param srcFile The source file
+     * @return The checked tree, or null if it is not cached
+     */
+    DeclNode.ProcedureNode loadCheckedTree(File srcFile) {
+        return null;
+    }
+
+    /**
+     * Save the checked abstract syntax tree of the source file, so that
+     * it may be loaded while the file is unchanged.
+     * By default no trees are cached.
+     *
+     * @param srcFile The source file
+     * @param tree    The tree without static errors
+     */
+    void saveCheckedTree(File srcFile, DeclNode.ProcedureNode tree) {
+    }
+
+    /**
+     * Read the source file through without parsing it, so that the error
+     * handler can list its lines when reporting runtime errors.
+     *
+     * @return true iff the source was read
+     */
+    private boolean readThrough(Source source) {
+        try {
+            source.skip(Long.MAX_VALUE);
+            return true;
+        } catch (IOException io) {
+            return false;
+        }
+    }
+
     /**
      * Perform the static semantics analysis
      *
@@ -161,22 +244,32 @@ public abstract class Runner {
 
         outStream.println("Compiling " + new File(source.getFileName()).getName());
 
-        /* Parse the source file to build a syntax tree */
-        DeclNode.ProcedureNode tree = parse(source);
-
-        errors.flush();
-        outStream.println("Parsing complete");
+        /* A checked tree cached for the same source needs no parsing or
+         * static checking */
+        DeclNode.ProcedureNode tree = isFlagSet('s') ? null : loadCheckedTree(srcFile);
+        if (tree != null && readThrough(source)) {
+            outStream.println("Parsing complete");
+            outStream.println("Static semantic analysis complete");
+        } else {
+            /* Parse the source file to build a syntax tree */
+            tree = parse(source);
 
-        if (tree != null && !isFlagSet('s')) {
-            /* if parsing was successful */
-            /* Perform static semantic analysis on syntax tree */
-            if (!staticCheck(tree)) { /* skip further steps if there were errors */
+            errors.flush();
+            outStream.println("Parsing complete");
+
+            if (tree != null && !isFlagSet('s')) {
+                /* if parsing was successful */
+                /* Perform static semantic analysis on syntax tree */
+                if (staticCheck(tree)) {
+                    saveCheckedTree(srcFile, tree);
+                } else { /* skip further steps if there were errors */
+                    tree = null;
+                }
+                errors.flush();
+                outStream.println("Static semantic analysis complete");
+            } else {
                 tree = null;
             }
-            errors.flush();
-            outStream.println("Static semantic analysis complete");
-        } else {
-            tree = null;
         }
 
         if (tree != null) {
@@ -210,6 +303,10 @@ public abstract class Runner {
                 if (configurations.containsKey(flag)) {
                     /* Set the flag to the opposite of flag default */
                     setFlag(flag, true);
+                    if (arg.length() > 2) {
+                        /* Value given directly after the flag, e.g. -x512 */
+                        setFlagValue(flag, arg.substring(2));
+                    }
                 } else {
                     /* Unknown flag given */
                     outStream.println("Unknown flag: " + flag);
@@ -255,6 +352,10 @@ class Option {
      * Whether or not the option has been set
      */
     private boolean set;
+    /**
+     * Value given with the option, or null if none was given
+     */
+    private String value;
 
     /**
      * Construct a new option.
@@ -287,4 +388,18 @@ class Option {
     public void set(boolean set) {
         this.set = set;
     }
+
+    /**
+     * @return The value given with the option, or null if none was given
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * Set the value given with the option
+     */
+    public void setValue(String value) {
+        this.value = value;
+    }
 }
@@ -101,7 +101,7 @@ public abstract class TestRunner {
     /**
      * @return The expected result file for a given test program
      */
-    private static File resultFile(File src) {
+    static File resultFile(File src) {
         File parent = src.getParentFile();
         /* Get the path to the folder one level above the test file
          * If there is no parent folder, leave empty */
@@ -0,0 +1,62 @@
+package pl0;
+
+import tree.DeclNode;
+import tree.TreeCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Run the test programs from their cached checked trees (-k). Each
+ * program is first compiled without running it (-i) to cache its tree in
+ * a directory of its own, and the tree is then loaded to run it.
+ */
+public class Test_RD_Cached extends TestRunner {
+
+    /**
+     * Construct a new parameterized test instance
+     *
+     * @param program PL0 source code currently being tested
+     */
+    public Test_RD_Cached(File program) {
+        super(program);
+    }
+
+    @Override
+    public void run(PrintStream outputStream) throws IOException {
+        File directory = Files.createTempDirectory("pl0-tree-cache").toFile();
+        String cache = "-k" + directory.getPath();
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        Runner first = new PL0_RD();
+        first.parseArguments(new String[]{cache, "-i", program.getPath()},
+                "pl0.PL0_RD", discard);
+        first.run(program.getCanonicalPath(), discard);
+
+        /* Only the trees of programs without static errors, which are
+         * the programs run, are cached */
+        boolean checked = Files.readString(resultFile(program).toPath()).contains("Running ...");
+        String hash = TreeCache.hash(program);
+        assertEquals("The tree is cached", checked, new File(directory, hash).isFile());
+        if (checked) {
+            assertNotNull("The cached tree is loaded", new TreeCache(directory).load(hash));
+        }
+
+        Runner cached = new PL0_RD() {
+            @Override
+            DeclNode.ProcedureNode loadCheckedTree(File srcFile) {
+                DeclNode.ProcedureNode tree = super.loadCheckedTree(srcFile);
+                assertEquals("The program is run from its cached tree", checked, tree != null);
+                return tree;
+            }
+        };
+        cached.parseArguments(new String[]{cache, program.getPath()},
+                "pl0.PL0_RD", outputStream);
+        cached.run(program.getCanonicalPath(), outputStream);
+    }
+}
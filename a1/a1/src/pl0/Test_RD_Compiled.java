@@ -0,0 +1,54 @@
+package pl0;
+
+import org.junit.runners.Parameterized;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Run the test programs on the stack machine (-c).
+ * The stack machine reports runtime errors in its own format, so the
+ * programs expected to end with a fatal runtime error are left out.
+ */
+public class Test_RD_Compiled extends TestRunner {
+
+    /**
+     * Construct a new parameterized test instance
+     *
+     * @param program PL0 source code currently being tested
+     */
+    public Test_RD_Compiled(File program) {
+        super(program);
+    }
+
+    /**
+     * @return The test programs whose expected results have no runtime error
+     */
+    @Parameterized.Parameters(name = "{0}")
+    public static List<File> testPrograms() {
+        List<File> programs = new ArrayList<>();
+        for (File program : TestRunner.testPrograms()) {
+            try {
+                if (!Files.readString(resultFile(program).toPath()).contains("Fatal:")) {
+                    programs.add(program);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return programs;
+    }
+
+    @Override
+    public void run(PrintStream outputStream) throws IOException {
+        Runner runner = new PL0_RD();
+        runner.parseArguments(new String[]{"-c", program.getPath()},
+                "pl0.PL0_RD", outputStream);
+        runner.run(program.getCanonicalPath(), outputStream);
+    }
+}
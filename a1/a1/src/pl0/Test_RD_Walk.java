@@ -0,0 +1,29 @@
+package pl0;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * Run the test programs with the interpreter that walks the tree (-w)
+ * rather than the default compiled interpreter.
+ */
+public class Test_RD_Walk extends TestRunner {
+
+    /**
+     * Construct a new parameterized test instance
+     *
+     * @param program PL0 source code currently being tested
+     */
+    public Test_RD_Walk(File program) {
+        super(program);
+    }
+
+    @Override
+    public void run(PrintStream outputStream) throws IOException {
+        Runner runner = new PL0_RD();
+        runner.parseArguments(new String[]{"-w", program.getPath()},
+                "pl0.PL0_RD", outputStream);
+        runner.run(program.getCanonicalPath(), outputStream);
+    }
+}
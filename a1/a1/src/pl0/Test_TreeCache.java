@@ -0,0 +1,98 @@
+package pl0;
+
+import org.junit.Test;
+import tree.DeclNode;
+import tree.TreeCache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Test that a program whose cached tree (-k) cannot be loaded is parsed
+ * and checked again, and that its tree is then cached afresh.
+ */
+public class Test_TreeCache {
+
+    private static final String PROGRAM =
+            "var x: int;\n" +
+            "begin\n" +
+            "  x := 6;\n" +
+            "  while 0 < x do x := x - 1;\n" +
+            "  write x\n" +
+            "end\n";
+
+    private final File directory;
+    private final File program;
+    private final File cacheFile;
+
+    public Test_TreeCache() throws IOException {
+        directory = Files.createTempDirectory("pl0-tree-cache").toFile();
+        program = new File(directory, "program.pl0");
+        Files.writeString(program.toPath(), PROGRAM);
+        cacheFile = new File(directory, TreeCache.hash(program));
+    }
+
+    /**
+     * @return the output of compiling and running the program with the
+     * cache, checking whether its tree was loaded from the cache
+     */
+    private String run(boolean expectCached) throws IOException {
+        ByteArrayOutputStream outputArray = new ByteArrayOutputStream();
+        PrintStream outputStream = new PrintStream(outputArray, true);
+        Runner runner = new PL0_RD() {
+            @Override
+            DeclNode.ProcedureNode loadCheckedTree(File srcFile) {
+                DeclNode.ProcedureNode tree = super.loadCheckedTree(srcFile);
+                assertEquals("The tree is loaded from the cache", expectCached, tree != null);
+                return tree;
+            }
+        };
+        runner.parseArguments(new String[]{"-k" + directory.getPath(), program.getPath()},
+                "pl0.PL0_RD", outputStream);
+        runner.run(program.getCanonicalPath(), outputStream);
+        return outputArray.toString().replaceAll("\\r\\n", "\n");
+    }
+
+    /**
+     * Run the program with a damaged cache file, which must be parsed
+     * instead and cached again
+     */
+    private void runDamaged(String expected) throws IOException {
+        assertNull("The damaged tree is not loaded",
+                new TreeCache(directory).load(cacheFile.getName()));
+        assertEquals(expected, run(false));
+        assertNotNull("The tree is cached again",
+                new TreeCache(directory).load(cacheFile.getName()));
+        assertEquals(expected, run(true));
+    }
+
+    @Test
+    public void truncatedFile() throws Exception {
+        String expected = run(false);
+        byte[] contents = Files.readAllBytes(cacheFile.toPath());
+        Files.write(cacheFile.toPath(), Arrays.copyOf(contents, contents.length / 2));
+        runDamaged(expected);
+    }
+
+    @Test
+    public void otherVersion() throws Exception {
+        String expected = run(false);
+        try (RandomAccessFile file = new RandomAccessFile(cacheFile, "rw")) {
+            /* The version follows the magic number */
+            file.seek(Integer.BYTES);
+            int version = file.readInt();
+            file.seek(Integer.BYTES);
+            file.writeInt(version + 1);
+        }
+        runDamaged(expected);
+    }
+}
@@ -10,6 +10,7 @@ import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * class ErrorHandler - Handles error message generated by the compiler.
@@ -20,6 +21,15 @@ public class ErrorHandler implements Errors {
     public static final Location NO_LOCATION =
             new Location(Integer.MAX_VALUE, Integer.MAX_VALUE);
 
+    /**
+     * Thrown on a fatal error, once it has been reported
+     */
+    public static class FatalError extends Error {
+        public FatalError() {
+            super("Fatal error");
+        }
+    }
+
     /**
      * global handle on the singleton error handler.
      */
@@ -199,7 +209,7 @@ public class ErrorHandler implements Errors {
      * After that errors messages are discarded,
      * but a count of the total number of errors maintained.
      * A FATAL error causes the accumulated error messages
-     * to be flushed and a Java Fatal Error to be thrown.
+     * to be flushed and a FatalError to be thrown.
      */
     private void errorMessage(CompileError error) {
         if (numberOfErrors < MAX_ERRORS) {
@@ -209,7 +219,7 @@ public class ErrorHandler implements Errors {
         if (error.getSeverity() == Severity.FATAL) {
             listMessages();
             errorSummary();
-            throw new Error("Fatal error");
+            throw new FatalError();
         }
     }
 
@@ -260,6 +270,32 @@ public class ErrorHandler implements Errors {
         }
     }
 
+    /**
+     * List the source program, preceding each line by its annotation,
+     * then its line number.
+     */
+    public void listSource(Map<Integer, String> annotations, int width) {
+        try {
+            inputStream = new BufferedReader(
+                    new FileReader(source.getFileName()));
+        } catch (FileNotFoundException e1) {
+            System.err.println("ErrorHandler.listSource: " +
+                    source.getFileName() + " not found");
+            return;
+        }
+        inputIndex = 0;
+        for (int lineNumber = 0; lineNumber < source.getLineCount(); lineNumber++) {
+            String annotation = annotations.getOrDefault(lineNumber, "");
+            output.print(annotation);
+            for (int i = annotation.length(); i < width; i++) {
+                output.print(' ');
+            }
+            printPaddedInteger(output, lineNumber + 1);
+            output.print(' ');
+            printLine(new Location(lineNumber, 0));
+        }
+    }
+
     /**
      * Print the line from source file.
      *
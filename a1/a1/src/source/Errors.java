@@ -2,6 +2,8 @@ package source;
 
 import java_cup.runtime.ComplexSymbolFactory.Location;
 
+import java.util.Map;
+
 /**
  * interface Errors - interface to allow reporting of compilation
  * errors and other messages. Use flush() to cause output.
@@ -63,4 +65,13 @@ public interface Errors {
      */
     void println(String msg);
 
+    /**
+     * List the source program, preceding each line by its annotation
+     *
+     * @param annotations annotation of each line indexed by line number,
+     *                    counting from 0; lines with none are indented
+     * @param width       width of the annotations
+     */
+    void listSource(Map<Integer, String> annotations, int width);
+
 }
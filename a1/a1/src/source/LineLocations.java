@@ -12,6 +12,8 @@ import java.util.List;
 class LineLocations {
 
     private final List<Integer> lineEnds;
+    /* Location of the end of the text, or -1 until it is reached */
+    private int endOfText = -1;
 
     LineLocations() {
         this.lineEnds = new ArrayList<>();
@@ -30,6 +32,15 @@ class LineLocations {
         }
     }
 
+    /**
+     * Add the location of the end of the text, which ends the last line.
+     * requires the location greater than or equal to previous last location.
+     */
+    void addEndOfText(int p) {
+        endOfText = p;
+        add(p);
+    }
+
     /**
      * Retrieve the line number on which the given location occurs.
      * requires the location is not greater than the end of the last line.
@@ -59,6 +70,19 @@ class LineLocations {
         return p.getColumn();
     }
 
+    /**
+     * Get the number of lines, not counting the empty line after a final
+     * end-of-line at the end of the text.
+     */
+    int getLineCount() {
+        int count = lineEnds.size() - 1;
+        if (count > 0 && endOfText == endLast() &&
+                endOfText == lineEnds.get(count - 1) + 1) {
+            count--;
+        }
+        return count;
+    }
+
     /**
      * Get the location of the end of the last line.
      */
@@ -59,6 +59,13 @@ public class Source extends java.io.Reader {
         return lineLocations.getLineStart(loc);
     }
 
+    /**
+     * Get the number of lines read.
+     */
+    int getLineCount() {
+        return lineLocations.getLineCount();
+    }
+
     /**
      * Provides buffered read to JFlex.
      * getNextChar should be enough, but this is the interface JFlex wants.
@@ -66,7 +73,7 @@ public class Source extends java.io.Reader {
     public int read(char[] buffer, int off, int len) throws IOException {
         int chars_read = input.read(buffer, off, len);
         if (chars_read < 0) {
-            lineLocations.add(currentLoc);
+            lineLocations.addEndOfText(currentLoc);
         } else {
             for (int i = 0; i < chars_read; i++) {
                 if (buffer[off + i] == '\n') {
@@ -80,6 +80,10 @@ public class Scope {
         return level;
     }
 
+    public SymEntry.ProcedureEntry getOwnerEntry() {
+        return ownerEntry;
+    }
+
 
     /**
      * @return the set of entries in this scope
@@ -256,6 +256,10 @@ public abstract class SymEntry {
          * Body of the procedure
          */
         private StatementNode.BlockNode block;
+        /**
+         * start location of the procedure code
+         */
+        private int start;
         /**
          * Scope of entries declared locally to the procedure
          */
@@ -291,6 +295,14 @@ public abstract class SymEntry {
             this.block = block;
         }
 
+        public int getStart() {
+            return start;
+        }
+
+        public void setStart(int start) {
+            this.start = start;
+        }
+
         @Override
         public String toString() {
             return toString("PROC  ", " : ");
@@ -0,0 +1,363 @@
+package tree;
+
+import java.util.List;
+
+import machine.Operation;
+import machine.StackMachine;
+import source.Errors;
+import syms.Scope;
+import syms.SymEntry;
+
+/**
+ * class CodeGenerator - Generates code for the stack machine from the
+ * checked abstract syntax tree, so that a program can be run on the
+ * stack machine rather than interpreted.
+ * Like the CompiledInterpreter, it switches on the kind of each node.
+ * The runtime errors detected by the interpreters halt the machine with
+ * a stop code, although without the location of the error.
+ * Variable offsets start from 0, so the frame header of the stack
+ * machine, StackMachine.LOCALS_BASE words, is added to each.
+ */
+public class CodeGenerator {
+    /**
+     * Current static level of nesting into procedures.
+     */
+    private int staticLevel;
+
+    /**
+     * Table of code for each procedure
+     */
+    private final Procedures procedures;
+
+    /**
+     * Error message handler
+     */
+    private final Errors errors;
+
+    public CodeGenerator(Errors errors) {
+        this.errors = errors;
+        procedures = new Procedures();
+    }
+
+    /**
+     * Main generate code method for the program.
+     */
+    public Procedures generateCode(DeclNode.ProcedureNode node) {
+        genProcedure(node);
+        return procedures;
+    }
+
+    /**
+     * Generate code for a procedure and the procedures declared within it.
+     */
+    private void genProcedure(DeclNode.ProcedureNode node) {
+        Scope locals = node.getProcEntry().getLocalScope();
+        staticLevel = locals.getLevel();
+        Code code = new Code();
+        /* Allocate space for the local variables on procedure entry */
+        code.genAllocStack(locals.getVariableSpace());
+        code.append(genStatement(node.getBlock().getBody()));
+        code.generateOp(Operation.RETURN);
+        procedures.addProcedure(node.getProcEntry(), code);
+        for (DeclNode decl : node.getBlock().getProcedures().getDeclarations()) {
+            if (decl instanceof DeclNode.ProcedureNode nested) {
+                genProcedure(nested);
+            }
+        }
+    }
+
+    /* Statement code generation */
+
+    private Code genStatement(StatementNode statement) {
+        Code code = new Code();
+        if (statement instanceof StatementNode.AssignmentNode assignment) {
+            code.genComment("assignment to " + assignment.getLValue() + ":");
+            if (assignment.getLValue() instanceof ExpNode.VariableNode variable) {
+                code.append(genExp(assignment.getExp()));
+                code.append(genVariable(variable));
+            } else {
+                /* As in the interpreters the address is evaluated first */
+                code.append(genAddress(assignment.getLValue()));
+                code.append(genExp(assignment.getExp()));
+                code.generateOp(Operation.SWAP);
+            }
+            code.generateOp(Operation.STORE_FRAME);
+        } else if (statement instanceof StatementNode.MultipleAssignmentNode multiple) {
+            code.genComment("multiple assignment:");
+            code.append(genMultipleAssignment(multiple));
+        } else if (statement instanceof StatementNode.ReadNode read) {
+            code.genComment("read to " + read.getLValue() + ":");
+            code.generateOp(Operation.READ);
+            code.append(genAddress(read.getLValue()));
+            code.generateOp(Operation.STORE_FRAME);
+        } else if (statement instanceof StatementNode.WriteNode write) {
+            code.genComment("write " + write.getExp() + ":");
+            code.append(genExp(write.getExp()));
+            code.generateOp(Operation.WRITE);
+        } else if (statement instanceof StatementNode.CallNode call) {
+            SymEntry.ProcedureEntry proc = call.getEntry();
+            code.genComment("call " + proc.getIdent() + ":");
+            code.genCall(staticLevel - proc.getLevel(), proc);
+        } else if (statement instanceof StatementNode.ListNode list) {
+            for (StatementNode s : list.getStatements()) {
+                code.append(genStatement(s));
+            }
+        } else if (statement instanceof StatementNode.IfNode ifNode) {
+            code.genComment("if " + ifNode.getCondition() + ":");
+            code.genIfThenElse(genExp(ifNode.getCondition()),
+                    genStatement(ifNode.getThenStmt()),
+                    genStatement(ifNode.getElseStmt()));
+        } else if (statement instanceof StatementNode.WhileNode whileNode) {
+            code.genComment("while " + whileNode.getCondition() + ":");
+            code.append(genExp(whileNode.getCondition()));
+            Code bodyCode = genStatement(whileNode.getLoopStmt());
+            /* Branch over the body and the branch back to the condition */
+            code.genJumpIfFalse(bodyCode.size() + Code.SIZE_JUMP_ALWAYS);
+            code.append(bodyCode);
+            code.genJumpAlways(-(code.size() + Code.SIZE_JUMP_ALWAYS));
+        } else {
+            errors.fatal("PL0 Internal error: generating code for " +
+                    statement.getClass().getSimpleName(), statement.getLocation());
+        }
+        return code;
+    }
+
+    /**
+     * Generate code for a multiple assignment. All the expressions are
+     * evaluated onto the stack and then stored in reverse order.
+     * Assigning the same variable twice halts the machine once the
+     * expressions have been evaluated, as in the interpreters.
+     */
+    private Code genMultipleAssignment(StatementNode.MultipleAssignmentNode node) {
+        List<StatementNode.AssignmentNode> assignments = node.getAssignmentNodeList();
+        if (!node.hasVariableTargets()) {
+            return genMultipleAssignmentAddresses(assignments);
+        }
+        Code code = new Code();
+        for (StatementNode.AssignmentNode assignment : assignments) {
+            code.append(genExp(assignment.getExp()));
+        }
+        if (node.getDuplicate() >= 0) {
+            /* The static checker found a variable assigned twice */
+            code.genLoadConstant(StackMachine.DUPLICATE_ASSIGNMENT);
+            code.generateOp(Operation.STOP);
+            return code;
+        }
+        for (int i = assignments.size() - 1; i >= 0; i--) {
+            code.append(genVariable(
+                    (ExpNode.VariableNode) assignments.get(i).getLValue()));
+            code.generateOp(Operation.STORE_FRAME);
+        }
+        return code;
+    }
+
+    /**
+     * Generate code for a multiple assignment to left values that are not
+     * all variables. The address and value of each assignment are pushed
+     * in turn and the addresses compared pairwise before any is stored.
+     */
+    private Code genMultipleAssignmentAddresses(
+            List<StatementNode.AssignmentNode> assignments) {
+        Code code = new Code();
+        int count = assignments.size();
+        for (StatementNode.AssignmentNode assignment : assignments) {
+            code.append(genAddress(assignment.getLValue()));
+            code.append(genExp(assignment.getExp()));
+        }
+        /* The address of the i'th assignment is 2 * (count - i) - 1 words
+         * below the top of the stack */
+        for (int i = 0; i < count; i++) {
+            for (int j = i + 1; j < count; j++) {
+                Code compare = new Code();
+                compare.genLoadConstant(2 * (count - i) - 1);
+                compare.generateOp(Operation.LOAD_STACK);
+                /* One deeper for the address just loaded */
+                compare.genLoadConstant(2 * (count - j));
+                compare.generateOp(Operation.LOAD_STACK);
+                compare.generateOp(Operation.EQUAL);
+                code.genIfThenElse(compare, genStop(StackMachine.DUPLICATE_ASSIGNMENT),
+                        new Code());
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            code.generateOp(Operation.SWAP);
+            code.generateOp(Operation.STORE_FRAME);
+        }
+        return code;
+    }
+
+    /**
+     * Generate code to load the address of the variable a left value
+     * refers to, relative to the frame pointer.
+     */
+    private Code genAddress(ExpNode lValue) {
+        if (lValue instanceof ExpNode.VariableNode variable) {
+            return genVariable(variable);
+        } else if (lValue instanceof ExpNode.IfExpNode ifExp) {
+            return genIfExp(ifExp, true);
+        }
+        errors.fatal("PL0 Internal error: generating code for left value " +
+                lValue.getClass().getSimpleName(), lValue.getLocation());
+        return null; // Never reached
+    }
+
+    /**
+     * Generate code to load the address of a variable
+     */
+    private Code genVariable(ExpNode.VariableNode node) {
+        SymEntry.VarEntry var = node.getVariable();
+        Code code = new Code();
+        code.genMemRef(staticLevel - var.getLevel(),
+                StackMachine.LOCALS_BASE + var.getOffset());
+        return code;
+    }
+
+    /* Expression code generation */
+
+    private Code genExp(ExpNode exp) {
+        Code code;
+        if (exp instanceof ExpNode.ConstNode constant) {
+            code = new Code();
+            if (constant.getValue() == 0) {
+                code.generateOp(Operation.ZERO);
+            } else if (constant.getValue() == 1) {
+                code.generateOp(Operation.ONE);
+            } else {
+                code.genLoadConstant(constant.getValue());
+            }
+        } else if (exp instanceof ExpNode.DereferenceNode deref) {
+            code = genAddress(deref.getLeftValue());
+            if (deref.isDefinitelyAssigned()) {
+                code.generateOp(Operation.LOAD_FRAME);
+            } else {
+                code.generateOp(Operation.LOAD_ASSIGNED);
+            }
+        } else if (exp instanceof ExpNode.BinaryNode binary) {
+            code = genBinary(binary);
+        } else if (exp instanceof ExpNode.UnaryNode unary) {
+            code = genExp(unary.getArg());
+            switch (unary.getOp()) {
+                case NEG_OP -> code.generateOp(Operation.NEGATE);
+                default -> errors.fatal("PL0 Internal error: Unknown operator",
+                        unary.getLocation());
+            }
+        } else if (exp instanceof ExpNode.NarrowSubrangeNode narrow) {
+            code = genExp(narrow.getExp());
+            code.genBoundsCheck(narrow.getSubrangeType().getLower(),
+                    narrow.getSubrangeType().getUpper());
+        } else if (exp instanceof ExpNode.WidenSubrangeNode widen) {
+            /* Widening has no effect at run time */
+            code = genExp(widen.getExp());
+        } else if (exp instanceof ExpNode.IfExpNode ifExp) {
+            code = genIfExp(ifExp, false);
+        } else {
+            errors.fatal("PL0 Internal error: generating code for " +
+                    exp.getClass().getSimpleName(), exp.getLocation());
+            code = null; // Never reached
+        }
+        return code;
+    }
+
+    private Code genBinary(ExpNode.BinaryNode node) {
+        Code code;
+        ExpNode left = node.getLeft();
+        ExpNode right = node.getRight();
+        switch (node.getOp()) {
+            case ADD_OP -> {
+                code = genArgs(left, right);
+                code.generateOp(Operation.ADD);
+            }
+            case SUB_OP -> {
+                code = genArgs(left, right);
+                code.generateOp(Operation.NEGATE);
+                code.generateOp(Operation.ADD);
+            }
+            case MUL_OP -> {
+                code = genArgs(left, right);
+                code.generateOp(Operation.MPY);
+            }
+            case DIV_OP -> {
+                code = genArgs(left, right);
+                code.generateOp(Operation.DIV);
+            }
+            case EQUALS_OP -> {
+                code = genArgs(left, right);
+                code.generateOp(Operation.EQUAL);
+            }
+            case NEQUALS_OP -> {
+                code = genArgs(left, right);
+                code.generateOp(Operation.EQUAL);
+                code.genBoolNot();
+            }
+            case LESS_OP -> {
+                code = genArgs(left, right);
+                code.generateOp(Operation.LESS);
+            }
+            case LEQUALS_OP -> {
+                code = genArgs(left, right);
+                code.generateOp(Operation.LESSEQ);
+            }
+            case GREATER_OP -> {
+                /* Generate argument values in reverse order and use LESS */
+                code = genArgs(right, left);
+                code.generateOp(Operation.LESS);
+            }
+            case GEQUALS_OP -> {
+                /* Generate argument values in reverse order and use LESSEQ */
+                code = genArgs(right, left);
+                code.generateOp(Operation.LESSEQ);
+            }
+            default -> {
+                errors.fatal("PL0 Internal error: Unknown operator", node.getLocation());
+                code = null;
+            }
+        }
+        return code;
+    }
+
+    /**
+     * Generate operator operands in order
+     */
+    private Code genArgs(ExpNode left, ExpNode right) {
+        Code code = genExp(left);
+        code.append(genExp(right));
+        return code;
+    }
+
+    /**
+     * Generate code for an if expression as a chain of guards, each
+     * branching to the next guard if false and otherwise evaluating its
+     * expression and branching to the end of the chain. The chain ends by
+     * halting the machine, as no alternative can be selected.
+     *
+     * @param address whether the if expression is a left value, whose
+     *                branches give addresses rather than values
+     */
+    private Code genIfExp(ExpNode.IfExpNode node, boolean address) {
+        List<ExpNode.IfExpNode.IfExpBranch> branches = node.getBranches();
+        /* Generated from the last branch back, so that each branch can
+         * jump over the code following it */
+        Code rest = genStop(StackMachine.NO_ALTERNATIVE);
+        for (int i = branches.size() - 1; i >= 0; i--) {
+            ExpNode.IfExpNode.IfExpBranch branch = branches.get(i);
+            Code expCode = address ? genAddress(branch.exp()) : genExp(branch.exp());
+            Code code = genExp(branch.guard());
+            code.genJumpIfFalse(expCode.size() + Code.SIZE_JUMP_ALWAYS);
+            code.append(expCode);
+            code.genJumpAlways(rest.size());
+            code.append(rest);
+            rest = code;
+        }
+        return rest;
+    }
+
+    /**
+     * @return code to halt the machine with the stop code
+     */
+    private static Code genStop(int stopCode) {
+        Code code = new Code();
+        code.genLoadConstant(stopCode);
+        code.generateOp(Operation.STOP);
+        return code;
+    }
+}
@@ -0,0 +1,264 @@
+package tree;
+
+import java.util.*;
+
+import syms.SymEntry;
+
+/**
+ * class DefiniteAssignment - Definite assignment analysis of a checked
+ * program. Each access to the value of a variable that must have been
+ * assigned whenever the access is executed is marked, so that the
+ * interpreters need not check at run time that it has been assigned.
+ * <p>
+ * Within a procedure the set of variables definitely assigned is
+ * followed through its body: an assignment or read adds its variable,
+ * both branches of an if statement must assign a variable, and the body
+ * of a while loop may not be executed at all. Expressions have no side
+ * effects, so every access within an expression sees the same set.
+ * Two summaries are kept for each procedure:
+ * <ul>
+ * <li>the variables of enclosing procedures definitely assigned on entry,
+ * being those assigned at every call of the procedure, and</li>
+ * <li>the variables of enclosing procedures definitely assigned on
+ * return, which a call adds to the set assigned at the call.</li>
+ * </ul>
+ * The locals of a procedure are unassigned on entry, as each call has a
+ * new frame. A procedure sees the frames of its enclosing procedures
+ * through the same static links as its callers, so a variable of an
+ * enclosing procedure is the same variable at the call and within the
+ * procedure. Both summaries start as the set of all the variables of
+ * enclosing procedures and are recomputed for all procedures until
+ * neither changes. A procedure that is never called keeps that set on
+ * entry, which is harmless because its accesses are never executed.
+ * The summaries are limited to the variables of enclosing procedures so
+ * that their size depends on the nesting of procedures rather than on
+ * the size of the program.
+ */
+class DefiniteAssignment {
+    /**
+     * Procedures of the program, with the main program first
+     */
+    private final List<SymEntry.ProcedureEntry> procedures = new ArrayList<>();
+
+    /**
+     * Variables of the procedures enclosing each procedure
+     */
+    private final Map<SymEntry.ProcedureEntry, Set<SymEntry.VarEntry>> outerVariables =
+            new HashMap<>();
+
+    /**
+     * Variables of enclosing procedures definitely assigned on entry
+     */
+    private Map<SymEntry.ProcedureEntry, Set<SymEntry.VarEntry>> onEntry =
+            new HashMap<>();
+
+    /**
+     * Variables of enclosing procedures definitely assigned on return
+     */
+    private Map<SymEntry.ProcedureEntry, Set<SymEntry.VarEntry>> onReturn =
+            new HashMap<>();
+
+    /**
+     * Summaries being computed from onEntry and onReturn in a pass
+     */
+    private Map<SymEntry.ProcedureEntry, Set<SymEntry.VarEntry>> nextEntry;
+    private Map<SymEntry.ProcedureEntry, Set<SymEntry.VarEntry>> nextReturn;
+
+    /**
+     * Whether the accesses are marked in this pass
+     */
+    private boolean marking = false;
+
+    /**
+     * Analyse the program and mark the accesses to variables that must
+     * have been assigned.
+     *
+     * @param program checked main program without static errors
+     */
+    void analyse(DeclNode.ProcedureNode program) {
+        addProcedures(program, Collections.emptySet());
+        for (SymEntry.ProcedureEntry procedure : procedures) {
+            onEntry.put(procedure, outerVariables.get(procedure));
+            onReturn.put(procedure, outerVariables.get(procedure));
+        }
+        /* The main program is not called, and starts with no variables
+         * assigned */
+        SymEntry.ProcedureEntry main = program.getProcEntry();
+        onEntry.put(main, Collections.emptySet());
+        /* The summaries only get smaller, so the passes terminate */
+        boolean changed = true;
+        while (changed) {
+            nextEntry = new HashMap<>();
+            nextReturn = new HashMap<>();
+            for (SymEntry.ProcedureEntry procedure : procedures) {
+                nextEntry.put(procedure, outerVariables.get(procedure));
+            }
+            nextEntry.put(main, Collections.emptySet());
+            for (SymEntry.ProcedureEntry procedure : procedures) {
+                analyse(procedure);
+            }
+            changed = !nextEntry.equals(onEntry) || !nextReturn.equals(onReturn);
+            onEntry = nextEntry;
+            onReturn = nextReturn;
+        }
+        marking = true;
+        for (SymEntry.ProcedureEntry procedure : procedures) {
+            analyse(procedure);
+        }
+    }
+
+    /**
+     * Add the procedure and those nested within it
+     *
+     * @param outer variables of the procedures enclosing the procedure
+     */
+    private void addProcedures(DeclNode.ProcedureNode node,
+                               Set<SymEntry.VarEntry> outer) {
+        SymEntry.ProcedureEntry procedure = node.getProcEntry();
+        procedures.add(procedure);
+        outerVariables.put(procedure, outer);
+        Set<SymEntry.VarEntry> visible = new HashSet<>(outer);
+        for (SymEntry entry : procedure.getLocalScope().getEntries()) {
+            if (entry instanceof SymEntry.VarEntry variable) {
+                visible.add(variable);
+            }
+        }
+        for (DeclNode decl : node.getBlock().getProcedures().getDeclarations()) {
+            if (decl instanceof DeclNode.ProcedureNode nested) {
+                addProcedures(nested, visible);
+            }
+        }
+    }
+
+    /**
+     * Analyse the body of the procedure from the variables assigned on
+     * entry, recording those assigned on return.
+     */
+    private void analyse(SymEntry.ProcedureEntry procedure) {
+        Set<SymEntry.VarEntry> assigned = new HashSet<>(onEntry.get(procedure));
+        analyse(procedure.getBlock().getBody(), assigned);
+        nextReturn.put(procedure, outer(procedure, assigned));
+    }
+
+    /**
+     * @return the variables of the set that belong to procedures enclosing
+     * the procedure
+     */
+    private static Set<SymEntry.VarEntry> outer(SymEntry.ProcedureEntry procedure,
+                                                Set<SymEntry.VarEntry> variables) {
+        int level = procedure.getLocalScope().getLevel();
+        Set<SymEntry.VarEntry> result = new HashSet<>();
+        for (SymEntry.VarEntry variable : variables) {
+            if (variable.getLevel() < level) {
+                result.add(variable);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Analyse a statement, updating the set of variables assigned
+     * before it to those assigned after it.
+     */
+    private void analyse(StatementNode statement, Set<SymEntry.VarEntry> assigned) {
+        if (statement instanceof StatementNode.AssignmentNode assignment) {
+            analyseLValue(assignment.getLValue(), assigned);
+            analyse(assignment.getExp(), assigned);
+            addVariable(assignment.getLValue(), assigned);
+        } else if (statement instanceof StatementNode.MultipleAssignmentNode multiple) {
+            /* All the expressions are evaluated before any assignment */
+            for (StatementNode.AssignmentNode assignment : multiple.getAssignmentNodeList()) {
+                analyseLValue(assignment.getLValue(), assigned);
+                analyse(assignment.getExp(), assigned);
+            }
+            for (StatementNode.AssignmentNode assignment : multiple.getAssignmentNodeList()) {
+                addVariable(assignment.getLValue(), assigned);
+            }
+        } else if (statement instanceof StatementNode.ReadNode read) {
+            analyseLValue(read.getLValue(), assigned);
+            addVariable(read.getLValue(), assigned);
+        } else if (statement instanceof StatementNode.WriteNode write) {
+            analyse(write.getExp(), assigned);
+        } else if (statement instanceof StatementNode.CallNode call) {
+            SymEntry.ProcedureEntry callee = call.getEntry();
+            nextEntry.put(callee, intersection(nextEntry.get(callee),
+                    outer(callee, assigned)));
+            assigned.addAll(onReturn.get(callee));
+        } else if (statement instanceof StatementNode.ListNode list) {
+            for (StatementNode s : list.getStatements()) {
+                analyse(s, assigned);
+            }
+        } else if (statement instanceof StatementNode.IfNode ifNode) {
+            analyse(ifNode.getCondition(), assigned);
+            Set<SymEntry.VarEntry> elseAssigned = new HashSet<>(assigned);
+            analyse(ifNode.getThenStmt(), assigned);
+            analyse(ifNode.getElseStmt(), elseAssigned);
+            assigned.retainAll(elseAssigned);
+        } else if (statement instanceof StatementNode.WhileNode whileNode) {
+            /* The loop body only adds to the variables assigned, so those
+             * assigned before the loop are assigned on every iteration */
+            analyse(whileNode.getCondition(), assigned);
+            analyse(whileNode.getLoopStmt(), new HashSet<>(assigned));
+        }
+    }
+
+    /**
+     * Add the variable assigned through the left value, if it is known
+     */
+    private static void addVariable(ExpNode lValue, Set<SymEntry.VarEntry> assigned) {
+        if (lValue instanceof ExpNode.VariableNode variable) {
+            assigned.add(variable.getVariable());
+        }
+    }
+
+    private static Set<SymEntry.VarEntry> intersection(Set<SymEntry.VarEntry> a,
+                                                       Set<SymEntry.VarEntry> b) {
+        Set<SymEntry.VarEntry> result = new HashSet<>(a);
+        result.retainAll(b);
+        return result;
+    }
+
+    /**
+     * Analyse the accesses within a left value, such as the guards of
+     * an if expression choosing between variables
+     */
+    private void analyseLValue(ExpNode lValue, Set<SymEntry.VarEntry> assigned) {
+        if (lValue instanceof ExpNode.IfExpNode ifExp) {
+            for (ExpNode.IfExpNode.IfExpBranch branch : ifExp.getBranches()) {
+                analyse(branch.guard(), assigned);
+                analyseLValue(branch.exp(), assigned);
+            }
+        }
+    }
+
+    /**
+     * Analyse the accesses within an expression, marking those to
+     * variables that are assigned.
+     */
+    private void analyse(ExpNode exp, Set<SymEntry.VarEntry> assigned) {
+        if (exp instanceof ExpNode.DereferenceNode deref) {
+            if (deref.getLeftValue() instanceof ExpNode.VariableNode variable) {
+                if (marking) {
+                    deref.setDefinitelyAssigned(
+                            assigned.contains(variable.getVariable()));
+                }
+            } else {
+                analyseLValue(deref.getLeftValue(), assigned);
+            }
+        } else if (exp instanceof ExpNode.BinaryNode binary) {
+            analyse(binary.getLeft(), assigned);
+            analyse(binary.getRight(), assigned);
+        } else if (exp instanceof ExpNode.UnaryNode unary) {
+            analyse(unary.getArg(), assigned);
+        } else if (exp instanceof ExpNode.NarrowSubrangeNode narrow) {
+            analyse(narrow.getExp(), assigned);
+        } else if (exp instanceof ExpNode.WidenSubrangeNode widen) {
+            analyse(widen.getExp(), assigned);
+        } else if (exp instanceof ExpNode.IfExpNode ifExp) {
+            for (ExpNode.IfExpNode.IfExpBranch branch : ifExp.getBranches()) {
+                analyse(branch.guard(), assigned);
+                analyse(branch.exp(), assigned);
+            }
+        }
+    }
+}
@@ -336,6 +336,12 @@ public abstract class ExpNode {
          */
         private ExpNode leftValue;
 
+        /**
+         * Whether the variable must have been assigned whenever it is
+         * accessed, as found by the definite assignment analysis
+         */
+        private boolean definitelyAssigned = false;
+
         /* The type of the Dereference node is the base type of the type
          * of the expression being dereferenced.
          */
@@ -353,6 +359,14 @@ public abstract class ExpNode {
             this.leftValue = leftValue;
         }
 
+        public boolean isDefinitelyAssigned() {
+            return definitelyAssigned;
+        }
+
+        public void setDefinitelyAssigned(boolean definitelyAssigned) {
+            this.definitelyAssigned = definitelyAssigned;
+        }
+
         @Override
         public ExpNode transform(ExpTransform<ExpNode> visitor) {
             return visitor.visitDereferenceNode(this);
@@ -197,6 +197,18 @@ public abstract class StatementNode {
 
         private final List<AssignmentNode> assignmentNodeList;
 
+        /**
+         * Whether the left values are all variables, so that whether one
+         * is assigned twice is known once the statement is checked
+         */
+        private boolean variableTargets = false;
+
+        /**
+         * Index of the first left value that is the same variable as an
+         * earlier one, or -1 if there is none
+         */
+        private int duplicate = -1;
+
         public MultipleAssignmentNode(Location loc, List<AssignmentNode> assignmentNodeList) {
             super(loc);
             this.assignmentNodeList = assignmentNodeList;
@@ -204,6 +216,22 @@ public abstract class StatementNode {
 
         public List<AssignmentNode> getAssignmentNodeList() { return assignmentNodeList;}
 
+        public boolean hasVariableTargets() {
+            return variableTargets;
+        }
+
+        public void setVariableTargets(boolean variableTargets) {
+            this.variableTargets = variableTargets;
+        }
+
+        public int getDuplicate() {
+            return duplicate;
+        }
+
+        public void setDuplicate(int duplicate) {
+            this.duplicate = duplicate;
+        }
+
         @Override
         public void accept(StatementVisitor visitor) {
             visitor.visitMultipleAssignmentNode(this);
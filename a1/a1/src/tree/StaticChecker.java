@@ -58,6 +58,11 @@ public class StaticChecker implements DeclVisitor, StatementVisitor,
         beginCheck("Program");
         // The main program is a special case of a procedure
         visitProcedureNode(node);
+        /* Mark the variable accesses that need no check at run time that
+         * the variable has been assigned. */
+        if (!errors.hadErrors()) {
+            new DefiniteAssignment().analyse(node);
+        }
         endCheck("Program");
     }
 
@@ -139,24 +144,34 @@ public class StaticChecker implements DeclVisitor, StatementVisitor,
     }
 
     /**
-     *
-     * Multiple Assignment statement node, calls upon assignment node internally
+     * Multiple Assignment statement node, calls upon assignment node internally.
+     * When the left values are all variables, whether one is assigned twice
+     * is decided here and recorded in the node. Assigning a variable twice is
+     * a runtime error, reported when the statement is executed.
      */
     public void visitMultipleAssignmentNode (StatementNode.MultipleAssignmentNode node) {
         beginCheck("MultipleAssignment");
-        //hashset to ensure all l-values are distinct
-        Set<ExpNode> lValues = new HashSet<>();
+        //variables assigned so far, to find one assigned twice
+        Set<SymEntry.VarEntry> assigned = new HashSet<>();
+        boolean variableTargets = true;
+        int duplicate = -1;
+        List<AssignmentNode> assignments = node.getAssignmentNodeList();
         //check all l values
-        for (AssignmentNode a : node.getAssignmentNodeList()) {
+        for (int i = 0; i < assignments.size(); i++) {
+            AssignmentNode a = assignments.get(i);
             //normal assignment
             visitAssignmentNode(a);
-            //same l-value added twice
-            if(!lValues.add(a.getLValue())) {
-                staticError("duplicate assignment to the same left value",
-                        a.getLValue().getLocation());
+            if (a.getLValue() instanceof ExpNode.VariableNode variable) {
+                //same variable assigned twice
+                if (!assigned.add(variable.getVariable()) && duplicate < 0) {
+                    duplicate = i;
+                }
+            } else {
+                variableTargets = false;
             }
         }
-
+        node.setVariableTargets(variableTargets);
+        node.setDuplicate(variableTargets ? duplicate : -1);
         endCheck("MultipleAssignment");
     }
 
@@ -0,0 +1,660 @@
+package tree;
+
+import java_cup.runtime.ComplexSymbolFactory.Location;
+import source.ErrorHandler;
+import syms.*;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * class TreeCache - Cache of checked abstract syntax trees, so that
+ * running a program whose source is unchanged need not parse and
+ * statically check it again.
+ * Each tree is stored in a file named by the SHA-256 hash of the source.
+ * A loaded tree is run without being checked again, so a cache is only
+ * used in a directory owned by the user running the program.
+ * <p>
+ * The tree is written in a compact binary form with its symbol table
+ * entries: for each procedure, in pre-order, its name and its variables
+ * with their types and offsets, followed by the bodies of the procedures
+ * in the same order. Only what is needed to execute the program is kept:
+ * the constants and types of each scope have been folded into the tree
+ * by the static checker. Integers are written as variable length
+ * zigzag-encoded numbers, so small values take a single byte, and each
+ * distinct type is written once and then referred to by its index.
+ * The line of each location is written relative to the line of the
+ * previous one, a variable is referred to by the difference in level to
+ * its scope and its position within it, and only the types of
+ * expressions that their constructors cannot compute are written.
+ */
+public class TreeCache {
+    /**
+     * Marks the start of a cache file
+     */
+    private static final int MAGIC = 0x504c3043; // "PL0C"
+    /**
+     * Version of the format, to be incremented whenever it changes
+     */
+    private static final int VERSION = 1;
+
+    /* Kinds of statements */
+    private static final int ASSIGNMENT = 0;
+    private static final int MULTIPLE_ASSIGNMENT = 1;
+    private static final int READ = 2;
+    private static final int WRITE = 3;
+    private static final int CALL = 4;
+    private static final int LIST = 5;
+    private static final int IF = 6;
+    private static final int WHILE = 7;
+
+    /* Kinds of expressions */
+    private static final int CONST = 0;
+    private static final int VARIABLE = 1;
+    private static final int BINARY = 2;
+    private static final int UNARY = 3;
+    private static final int DEREFERENCE = 4;
+    private static final int NARROW = 5;
+    private static final int WIDEN = 6;
+    private static final int IF_EXP = 7;
+
+    /* Kinds of types */
+    private static final int ERROR_TYPE = 0;
+    private static final int INTEGER_TYPE = 1;
+    private static final int BOOLEAN_TYPE = 2;
+    private static final int SUBRANGE_TYPE = 3;
+    private static final int REFERENCE_TYPE = 4;
+
+    /**
+     * Line difference written for ErrorHandler.NO_LOCATION
+     */
+    private static final int NO_LINE = Integer.MIN_VALUE;
+
+    /**
+     * Directory holding the cache files
+     */
+    private final File directory;
+
+    public TreeCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return a cache in the directory .pl0-cache of the user's home directory
+     */
+    public static TreeCache forUser() {
+        return new TreeCache(new File(System.getProperty("user.home"), ".pl0-cache"));
+    }
+
+    /**
+     * @return the hash of the contents of the source file, as hexadecimal
+     */
+    public static String hash(File srcFile) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(Files.readAllBytes(srcFile.toPath())));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Load the checked tree of the source with the hash.
+     *
+     * @return the tree, or null if it is not cached or the cache file
+     * is not readable
+     */
+    public DeclNode.ProcedureNode load(String hash) {
+        File file = new File(directory, hash);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            if (!ownedByUser(directory) || !ownedByUser(file)) {
+                return null;
+            }
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file)))) {
+                return new TreeReader(in).readProgram();
+            }
+        } catch (IOException | RuntimeException e) {
+            /* A cache file from another version, or that is damaged, is
+             * treated as missing, so the source is parsed and checked */
+            return null;
+        }
+    }
+
+    /**
+     * Save the checked tree of the source with the hash.
+     * The cache is only an optimisation, so a tree that cannot be saved
+     * is not reported.
+     */
+    public void save(String hash, DeclNode.ProcedureNode tree) {
+        File temp = null;
+        try {
+            Files.createDirectories(directory.toPath());
+            if (!ownedByUser(directory)) {
+                return;
+            }
+            /* Written to a temporary file first so that a concurrent load
+             * never sees a partial file */
+            temp = File.createTempFile(hash, ".tmp", directory);
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp)))) {
+                new TreeWriter(out).writeProgram(tree);
+            }
+            Files.move(temp.toPath(), new File(directory, hash).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            /* The program runs without caching its tree */
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * @return true iff the file is owned by the user running the program
+     */
+    private static boolean ownedByUser(File file) throws IOException {
+        Path path = file.toPath();
+        UserPrincipal user = path.getFileSystem().getUserPrincipalLookupService()
+                .lookupPrincipalByName(System.getProperty("user.name"));
+        return Files.getOwner(path, LinkOption.NOFOLLOW_LINKS).equals(user);
+    }
+
+    /**
+     * Writes a checked tree
+     */
+    private static class TreeWriter {
+        private final DataOutputStream out;
+        /* Indices of the procedures and types written */
+        private final Map<SymEntry.ProcedureEntry, Integer> procedures = new HashMap<>();
+        /* Positions of the variables within their scopes */
+        private final Map<SymEntry.VarEntry, Integer> variables = new HashMap<>();
+        private final Map<Type, Integer> types = new IdentityHashMap<>();
+        /* Procedures in the order written, whose bodies follow */
+        private final List<DeclNode.ProcedureNode> bodies = new ArrayList<>();
+        /* Line of the last location written */
+        private int line = 0;
+        /* Level of the procedure whose body is being written */
+        private int level;
+
+        TreeWriter(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void writeProgram(DeclNode.ProcedureNode program) throws IOException {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeProcedure(program);
+            for (DeclNode.ProcedureNode node : bodies) {
+                level = node.getProcEntry().getLocalScope().getLevel();
+                writeStatement(node.getBlock().getBody());
+            }
+        }
+
+        /**
+         * Write a procedure's entry and variables, followed by the
+         * procedures declared within it.
+         */
+        private void writeProcedure(DeclNode.ProcedureNode node) throws IOException {
+            SymEntry.ProcedureEntry entry = node.getProcEntry();
+            procedures.put(entry, procedures.size());
+            bodies.add(node);
+            out.writeUTF(entry.getIdent());
+            writeLocation(entry.getLocation());
+            writeLocation(node.getBlock().getLocation());
+            List<SymEntry.VarEntry> locals = new ArrayList<>();
+            for (SymEntry local : entry.getLocalScope().getEntries()) {
+                if (local instanceof SymEntry.VarEntry variable) {
+                    locals.add(variable);
+                }
+            }
+            locals.sort(Comparator.comparingInt(SymEntry.VarEntry::getOffset));
+            writeNumber(locals.size());
+            for (int i = 0; i < locals.size(); i++) {
+                SymEntry.VarEntry variable = locals.get(i);
+                variables.put(variable, i);
+                out.writeUTF(variable.getIdent());
+                writeLocation(variable.getLocation());
+                writeType(variable.getType().getBaseType());
+                writeNumber(variable.getOffset());
+            }
+            List<DeclNode> declarations = node.getBlock().getProcedures().getDeclarations();
+            writeNumber(declarations.size());
+            for (DeclNode decl : declarations) {
+                if (decl instanceof DeclNode.ProcedureNode nested) {
+                    writeProcedure(nested);
+                } else {
+                    throw new IOException("cannot cache " + decl.getClass().getSimpleName());
+                }
+            }
+        }
+
+        private void writeStatement(StatementNode statement) throws IOException {
+            if (statement instanceof StatementNode.AssignmentNode assignment) {
+                writeNumber(ASSIGNMENT);
+                writeAssignment(assignment);
+            } else if (statement instanceof StatementNode.MultipleAssignmentNode multiple) {
+                writeNumber(MULTIPLE_ASSIGNMENT);
+                writeLocation(multiple.getLocation());
+                writeNumber(multiple.getAssignmentNodeList().size());
+                for (StatementNode.AssignmentNode assignment : multiple.getAssignmentNodeList()) {
+                    writeAssignment(assignment);
+                }
+                out.writeBoolean(multiple.hasVariableTargets());
+                writeNumber(multiple.getDuplicate());
+            } else if (statement instanceof StatementNode.ReadNode read) {
+                writeNumber(READ);
+                writeLocation(read.getLocation());
+                writeExp(read.getLValue());
+            } else if (statement instanceof StatementNode.WriteNode write) {
+                writeNumber(WRITE);
+                writeLocation(write.getLocation());
+                writeExp(write.getExp());
+            } else if (statement instanceof StatementNode.CallNode call) {
+                writeNumber(CALL);
+                /* Its identifier is that of the procedure */
+                writeLocation(call.getLocation());
+                writeNumber(procedures.get(call.getEntry()));
+            } else if (statement instanceof StatementNode.ListNode list) {
+                writeNumber(LIST);
+                writeLocation(list.getLocation());
+                writeNumber(list.getStatements().size());
+                for (StatementNode s : list.getStatements()) {
+                    writeStatement(s);
+                }
+            } else if (statement instanceof StatementNode.IfNode ifNode) {
+                writeNumber(IF);
+                writeLocation(ifNode.getLocation());
+                writeExp(ifNode.getCondition());
+                writeStatement(ifNode.getThenStmt());
+                writeStatement(ifNode.getElseStmt());
+            } else if (statement instanceof StatementNode.WhileNode whileNode) {
+                writeNumber(WHILE);
+                writeLocation(whileNode.getLocation());
+                writeExp(whileNode.getCondition());
+                writeStatement(whileNode.getLoopStmt());
+            } else {
+                throw new IOException("cannot cache " + statement.getClass().getSimpleName());
+            }
+        }
+
+        private void writeAssignment(StatementNode.AssignmentNode assignment)
+                throws IOException {
+            writeLocation(assignment.getLocation());
+            writeExp(assignment.getLValue());
+            writeExp(assignment.getExp());
+        }
+
+        private void writeExp(ExpNode exp) throws IOException {
+            if (exp instanceof ExpNode.ConstNode constant) {
+                writeNumber(CONST);
+                writeLocation(constant.getLocation());
+                writeNumber(constant.getValue());
+                writeType(constant.getType());
+            } else if (exp instanceof ExpNode.VariableNode variable) {
+                /* Its type is that of its variable */
+                writeNumber(VARIABLE);
+                writeLocation(variable.getLocation());
+                writeNumber(level - variable.getVariable().getLevel());
+                writeNumber(variables.get(variable.getVariable()));
+            } else if (exp instanceof ExpNode.BinaryNode binary) {
+                writeNumber(BINARY);
+                writeLocation(binary.getLocation());
+                writeNumber(binary.getOp().ordinal());
+                writeExp(binary.getLeft());
+                writeExp(binary.getRight());
+                writeType(binary.getType());
+            } else if (exp instanceof ExpNode.UnaryNode unary) {
+                writeNumber(UNARY);
+                writeLocation(unary.getLocation());
+                writeNumber(unary.getOp().ordinal());
+                writeExp(unary.getArg());
+                writeType(unary.getType());
+            } else if (exp instanceof ExpNode.DereferenceNode deref) {
+                /* Its location and type follow from its left value */
+                writeNumber(DEREFERENCE);
+                writeExp(deref.getLeftValue());
+                out.writeBoolean(deref.isDefinitelyAssigned());
+            } else if (exp instanceof ExpNode.NarrowSubrangeNode narrow) {
+                writeNumber(NARROW);
+                writeExp(narrow.getExp());
+                writeType(narrow.getType());
+            } else if (exp instanceof ExpNode.WidenSubrangeNode widen) {
+                /* Its location and type follow from the expression widened */
+                writeNumber(WIDEN);
+                writeExp(widen.getExp());
+            } else if (exp instanceof ExpNode.IfExpNode ifExp) {
+                writeNumber(IF_EXP);
+                writeLocation(ifExp.getLocation());
+                writeNumber(ifExp.getBranches().size());
+                for (ExpNode.IfExpNode.IfExpBranch branch : ifExp.getBranches()) {
+                    writeExp(branch.guard());
+                    writeExp(branch.exp());
+                }
+                writeType(ifExp.getType());
+            } else {
+                throw new IOException("cannot cache " + exp.getClass().getSimpleName());
+            }
+        }
+
+        /**
+         * Write the type, or its index if it has already been written
+         */
+        private void writeType(Type type) throws IOException {
+            Integer index = types.get(type);
+            if (index != null) {
+                writeNumber(index);
+                return;
+            }
+            /* A new type is written as -1 followed by its kind */
+            writeNumber(-1);
+            if (type == Type.ERROR_TYPE) {
+                writeNumber(ERROR_TYPE);
+            } else if (type == Predefined.INTEGER_TYPE) {
+                writeNumber(INTEGER_TYPE);
+            } else if (type == Predefined.BOOLEAN_TYPE) {
+                writeNumber(BOOLEAN_TYPE);
+            } else if (type instanceof Type.SubrangeType subrange) {
+                writeNumber(SUBRANGE_TYPE);
+                writeType(subrange.getBaseType());
+                writeNumber(subrange.getLower());
+                writeNumber(subrange.getUpper());
+            } else if (type instanceof Type.ReferenceType reference) {
+                writeNumber(REFERENCE_TYPE);
+                writeType(reference.getBaseType());
+            } else {
+                throw new IOException("cannot cache type " + type);
+            }
+            types.put(type, types.size());
+        }
+
+        /**
+         * Write the location as the difference from the line of the
+         * previous location, which is usually zero or one, and its column.
+         */
+        private void writeLocation(Location loc) throws IOException {
+            if (loc == ErrorHandler.NO_LOCATION) {
+                writeNumber(NO_LINE);
+            } else {
+                writeNumber(loc.getLine() - line);
+                writeNumber(loc.getColumn());
+                line = loc.getLine();
+            }
+        }
+
+        /**
+         * Write a variable length zigzag-encoded number: seven bits per
+         * byte, least significant first, with the top bit set on all
+         * but the last byte.
+         */
+        private void writeNumber(int value) throws IOException {
+            int bits = (value << 1) ^ (value >> 31);
+            while ((bits & ~0x7f) != 0) {
+                out.writeByte((bits & 0x7f) | 0x80);
+                bits >>>= 7;
+            }
+            out.writeByte(bits);
+        }
+    }
+
+    /**
+     * Reads a checked tree written by a TreeWriter
+     */
+    private static class TreeReader {
+        private final DataInputStream in;
+        /* Procedures and types read, indexed as written */
+        private final List<SymEntry.ProcedureEntry> procedures = new ArrayList<>();
+        private final List<Type> types = new ArrayList<>();
+        /* Variables of each scope read, in the order written */
+        private final Map<Scope, List<SymEntry.VarEntry>> variables = new HashMap<>();
+        /* Blocks of the procedures in the order read, whose bodies follow */
+        private final List<StatementNode.BlockNode> blocks = new ArrayList<>();
+        /* Line of the last location read */
+        private int line = 0;
+        /* Scope of the procedure whose body is being read */
+        private Scope scope;
+
+        TreeReader(DataInputStream in) {
+            this.in = in;
+        }
+
+        DeclNode.ProcedureNode readProgram() throws IOException {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("not a cached tree of this version");
+            }
+            /* The main program is declared in the predefined scope */
+            Scope predefined = new SymbolTable().getPredefinedScope();
+            DeclNode.ProcedureNode program = readProcedure(predefined);
+            for (int i = 0; i < blocks.size(); i++) {
+                scope = procedures.get(i).getLocalScope();
+                blocks.get(i).setBody(readStatement());
+            }
+            return program;
+        }
+
+        private DeclNode.ProcedureNode readProcedure(Scope parent) throws IOException {
+            SymEntry.ProcedureEntry entry =
+                    parent.addProcedure(in.readUTF(), readLocation());
+            procedures.add(entry);
+            Scope scope = parent.newScope(entry);
+            Location blockLoc = readLocation();
+            List<SymEntry.VarEntry> locals = new ArrayList<>();
+            variables.put(scope, locals);
+            int count = readNumber();
+            for (int i = 0; i < count; i++) {
+                SymEntry.VarEntry variable =
+                        scope.addVariable(in.readUTF(), readLocation(), readType());
+                /* Resolving the variables in order of their offsets
+                 * allocates them the same space in the scope */
+                variable.resolve();
+                variable.setOffset(readNumber());
+                locals.add(variable);
+            }
+            DeclNode.DeclListNode declarations = new DeclNode.DeclListNode();
+            StatementNode.BlockNode block = new StatementNode.BlockNode(blockLoc,
+                    declarations, null, scope);
+            entry.setBlock(block);
+            blocks.add(block);
+            count = readNumber();
+            for (int i = 0; i < count; i++) {
+                declarations.addDeclaration(readProcedure(scope));
+            }
+            return new DeclNode.ProcedureNode(entry, block);
+        }
+
+        private StatementNode readStatement() throws IOException {
+            int kind = readNumber();
+            switch (kind) {
+                case ASSIGNMENT:
+                    return readAssignment();
+                case MULTIPLE_ASSIGNMENT: {
+                    Location loc = readLocation();
+                    int count = readNumber();
+                    List<StatementNode.AssignmentNode> assignments = new ArrayList<>();
+                    for (int i = 0; i < count; i++) {
+                        assignments.add(readAssignment());
+                    }
+                    StatementNode.MultipleAssignmentNode multiple =
+                            new StatementNode.MultipleAssignmentNode(loc, assignments);
+                    multiple.setVariableTargets(in.readBoolean());
+                    multiple.setDuplicate(readNumber());
+                    return multiple;
+                }
+                case READ: {
+                    Location loc = readLocation();
+                    return new StatementNode.ReadNode(loc, readExp());
+                }
+                case WRITE: {
+                    Location loc = readLocation();
+                    return new StatementNode.WriteNode(loc, readExp());
+                }
+                case CALL: {
+                    Location loc = readLocation();
+                    SymEntry.ProcedureEntry procedure = procedures.get(readNumber());
+                    StatementNode.CallNode call =
+                            new StatementNode.CallNode(loc, procedure.getIdent());
+                    call.setEntry(procedure);
+                    return call;
+                }
+                case LIST: {
+                    Location loc = readLocation();
+                    int count = readNumber();
+                    List<StatementNode> statements = new ArrayList<>();
+                    for (int i = 0; i < count; i++) {
+                        statements.add(readStatement());
+                    }
+                    return new StatementNode.ListNode(loc, statements);
+                }
+                case IF: {
+                    Location loc = readLocation();
+                    ExpNode condition = readExp();
+                    StatementNode thenStmt = readStatement();
+                    return new StatementNode.IfNode(loc, condition, thenStmt,
+                            readStatement());
+                }
+                case WHILE: {
+                    Location loc = readLocation();
+                    ExpNode condition = readExp();
+                    return new StatementNode.WhileNode(loc, condition, readStatement());
+                }
+                default:
+                    throw new IOException("unknown statement kind " + kind);
+            }
+        }
+
+        private StatementNode.AssignmentNode readAssignment() throws IOException {
+            Location loc = readLocation();
+            ExpNode lValue = readExp();
+            return new StatementNode.AssignmentNode(loc, lValue, readExp());
+        }
+
+        private ExpNode readExp() throws IOException {
+            int kind = readNumber();
+            ExpNode exp;
+            switch (kind) {
+                case CONST: {
+                    Location loc = readLocation();
+                    int value = readNumber();
+                    return new ExpNode.ConstNode(loc, readType(), value);
+                }
+                case VARIABLE: {
+                    Location loc = readLocation();
+                    Scope declared = scope;
+                    for (int i = readNumber(); i > 0; i--) {
+                        declared = declared.getParent();
+                    }
+                    return new ExpNode.VariableNode(loc,
+                            variables.get(declared).get(readNumber()));
+                }
+                case BINARY: {
+                    Location loc = readLocation();
+                    Operator op = Operator.values()[readNumber()];
+                    ExpNode left = readExp();
+                    exp = new ExpNode.BinaryNode(loc, op, left, readExp());
+                    break;
+                }
+                case UNARY: {
+                    Location loc = readLocation();
+                    Operator op = Operator.values()[readNumber()];
+                    exp = new ExpNode.UnaryNode(loc, op, readExp());
+                    break;
+                }
+                case DEREFERENCE: {
+                    ExpNode.DereferenceNode deref = new ExpNode.DereferenceNode(readExp());
+                    deref.setDefinitelyAssigned(in.readBoolean());
+                    return deref;
+                }
+                case NARROW: {
+                    ExpNode narrowed = readExp();
+                    Type type = readType();
+                    return new ExpNode.NarrowSubrangeNode((Type.SubrangeType) type, narrowed);
+                }
+                case WIDEN:
+                    return new ExpNode.WidenSubrangeNode(readExp());
+                case IF_EXP: {
+                    Location loc = readLocation();
+                    int count = readNumber();
+                    List<ExpNode.IfExpNode.IfExpBranch> branches = new ArrayList<>();
+                    for (int i = 0; i < count; i++) {
+                        ExpNode guard = readExp();
+                        branches.add(new ExpNode.IfExpNode.IfExpBranch(guard, readExp()));
+                    }
+                    exp = new ExpNode.IfExpNode(loc, branches);
+                    break;
+                }
+                default:
+                    throw new IOException("unknown expression kind " + kind);
+            }
+            /* The types of binary, unary and if expressions are set by
+             * the static checker rather than their constructors */
+            exp.setType(readType());
+            return exp;
+        }
+
+        private Type readType() throws IOException {
+            int index = readNumber();
+            if (index >= 0) {
+                return types.get(index);
+            }
+            int kind = readNumber();
+            Type type;
+            switch (kind) {
+                case ERROR_TYPE:
+                    type = Type.ERROR_TYPE;
+                    break;
+                case INTEGER_TYPE:
+                    type = Predefined.INTEGER_TYPE;
+                    break;
+                case BOOLEAN_TYPE:
+                    type = Predefined.BOOLEAN_TYPE;
+                    break;
+                case SUBRANGE_TYPE: {
+                    Type baseType = readType();
+                    Location loc = ErrorHandler.NO_LOCATION;
+                    ConstExp lower = new ConstExp.NumberNode(loc, baseType, readNumber());
+                    ConstExp upper = new ConstExp.NumberNode(loc, baseType, readNumber());
+                    type = new Type.SubrangeType(lower, upper).resolveType();
+                    break;
+                }
+                case REFERENCE_TYPE:
+                    type = new Type.ReferenceType(readType());
+                    break;
+                default:
+                    throw new IOException("unknown type kind " + kind);
+            }
+            types.add(type);
+            return type;
+        }
+
+        private Location readLocation() throws IOException {
+            int difference = readNumber();
+            if (difference == NO_LINE) {
+                return ErrorHandler.NO_LOCATION;
+            }
+            line += difference;
+            return new Location(line, readNumber());
+        }
+
+        private int readNumber() throws IOException {
+            int bits = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = in.readUnsignedByte();
+                bits |= (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return (bits >>> 1) ^ -(bits & 1);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package cfg;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import machine.Instruction;
+import machine.Operation;
+
+/**
+ * class BasicBlock - a maximal sequence of instructions of a procedure
+ * that is only entered at its start and only left at its end.
+ * The branch (if any) that ends the block is not kept as instructions
+ * but as the terminator operation and the branch target.
+ */
+public class BasicBlock {
+    /**
+     * Number of the block within its control flow graph
+     */
+    private final int id;
+    /**
+     * Instructions of the block, excluding a terminating branch
+     */
+    private final List<Instruction> instructions = new ArrayList<>();
+    /**
+     * BR, BR_FALSE or BR_TRUE if the block ends with a branch, otherwise null
+     */
+    private Operation terminator;
+    /**
+     * Block branched to by the terminator
+     */
+    private BasicBlock branchTarget;
+    /**
+     * Block control falls through to, null if control cannot fall through
+     */
+    private BasicBlock fallThrough;
+    /**
+     * Blocks that may transfer control to this block
+     */
+    private final List<BasicBlock> predecessors = new ArrayList<>();
+
+    BasicBlock(int id) {
+        this.id = id;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public List<Instruction> getInstructions() {
+        return instructions;
+    }
+
+    public Operation getTerminator() {
+        return terminator;
+    }
+
+    void setTerminator(Operation terminator) {
+        this.terminator = terminator;
+    }
+
+    public BasicBlock getBranchTarget() {
+        return branchTarget;
+    }
+
+    public void setBranchTarget(BasicBlock branchTarget) {
+        this.branchTarget = branchTarget;
+    }
+
+    public BasicBlock getFallThrough() {
+        return fallThrough;
+    }
+
+    void setFallThrough(BasicBlock fallThrough) {
+        this.fallThrough = fallThrough;
+    }
+
+    public List<BasicBlock> getPredecessors() {
+        return predecessors;
+    }
+
+    /**
+     * @return the blocks control may pass to from the end of this block
+     */
+    public List<BasicBlock> getSuccessors() {
+        List<BasicBlock> successors = new ArrayList<>(2);
+        if (fallThrough != null) {
+            successors.add(fallThrough);
+        }
+        if (branchTarget != null && branchTarget != fallThrough) {
+            successors.add(branchTarget);
+        }
+        return successors;
+    }
+
+    /**
+     * @return true iff the block contains no instructions that generate
+     * code (other than its terminating branch)
+     */
+    public boolean isEmpty() {
+        for (Instruction inst : instructions) {
+            if (inst.getSize() != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the operation of the last instruction that generates code,
+     * or null if there is none
+     */
+    public Operation getLastOperation() {
+        for (int i = instructions.size() - 1; i >= 0; i--) {
+            if (instructions.get(i).getSize() != 0) {
+                return instructions.get(i).getOperation();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder("B" + id + ":");
+        for (Instruction inst : instructions) {
+            s.append(" ").append(inst);
+        }
+        if (terminator != null) {
+            s.append(" ").append(terminator).append(" B").append(branchTarget.getId());
+        }
+        if (fallThrough != null) {
+            s.append(" -> B").append(fallThrough.getId());
+        }
+        return s.toString();
+    }
+}
@@ -0,0 +1,101 @@
+package cfg;
+
+import java.util.*;
+
+import machine.Instruction;
+import machine.Operation;
+import tree.Code;
+
+/**
+ * class CodeVerifier - checks the structural invariants of the code of
+ * a procedure that the stack machine and the control flow graph rely on:
+ * each branch offset is a constant loaded immediately before the branch,
+ * each branch is to the start of an instruction within the procedure,
+ * branches to labels have been resolved to the label's position,
+ * profile points immediately precede a conditional branch, and control
+ * cannot run off the end of the procedure.
+ */
+public class CodeVerifier {
+
+    private CodeVerifier() {
+    }
+
+    /**
+     * Verify the code of a procedure.
+     *
+     * @param procedure name of the procedure
+     * @param pass      name of the pass that produced the code
+     * @throws Error describing the first problem found
+     */
+    public static void verify(String procedure, String pass, Code code) {
+        List<Instruction> instructions = code.getInstructionList();
+        int count = instructions.size();
+        /* Word address of each instruction relative to the start */
+        int[] address = new int[count + 1];
+        Set<Integer> starts = new HashSet<>();
+        Map<Instruction, Integer> labels = new IdentityHashMap<>();
+        for (int i = 0; i < count; i++) {
+            Instruction inst = instructions.get(i);
+            address[i + 1] = address[i] + inst.getSize();
+            if (inst.getSize() != 0) {
+                starts.add(address[i]);
+            }
+            if (inst instanceof Instruction.LabelInstruction) {
+                labels.put(inst, address[i]);
+            }
+        }
+        Operation last = null;
+        for (int i = 0; i < count; i++) {
+            Instruction inst = instructions.get(i);
+            Operation op = inst.getOperation();
+            if (isBranch(op)) {
+                if (i == 0 || !(instructions.get(i - 1) instanceof
+                        Instruction.LoadConInstruction offset)) {
+                    fail(procedure, pass, address[i], op + " offset is not a constant");
+                    return;
+                }
+                int target = address[i + 1] + offset.getValue();
+                if (!starts.contains(target)) {
+                    fail(procedure, pass, address[i], op + " to " + target +
+                            " is not to an instruction of the procedure");
+                }
+                if (offset instanceof Instruction.LabelRefInstruction ref) {
+                    Integer labelAddress = labels.get(ref.getLabel());
+                    if (labelAddress == null) {
+                        fail(procedure, pass, address[i], "branch to label " +
+                                ref.getLabel().getName() + " not in the procedure");
+                    } else if (labelAddress != target) {
+                        fail(procedure, pass, address[i], "branch to label " +
+                                ref.getLabel().getName() + " is unresolved");
+                    }
+                }
+            } else if (inst instanceof Instruction.ProfilePointInstruction) {
+                if (i + 2 >= count ||
+                        !(instructions.get(i + 1) instanceof Instruction.LoadConInstruction) ||
+                        !isConditional(instructions.get(i + 2).getOperation())) {
+                    fail(procedure, pass, address[i],
+                            "profile point is not followed by a conditional branch");
+                }
+            }
+            if (inst.getSize() != 0) {
+                last = op;
+            }
+        }
+        if (last != Operation.RETURN && last != Operation.STOP && last != Operation.BR) {
+            fail(procedure, pass, address[count], "control runs off the end");
+        }
+    }
+
+    private static boolean isBranch(Operation op) {
+        return op == Operation.BR || isConditional(op);
+    }
+
+    private static boolean isConditional(Operation op) {
+        return op == Operation.BR_FALSE || op == Operation.BR_TRUE;
+    }
+
+    private static void fail(String procedure, String pass, int address, String message) {
+        throw new Error("Code verification failed for " + procedure +
+                " after " + pass + " at " + address + ": " + message);
+    }
+}
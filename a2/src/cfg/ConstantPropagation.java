@@ -0,0 +1,89 @@
+package cfg;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import machine.Instruction;
+
+/**
+ * class ConstantPropagation - forward analysis of the slots of the current
+ * frame that hold a known constant value on every path to each point.
+ * A fact maps each slot with a known value to that value.
+ */
+public class ConstantPropagation extends Dataflow<Map<Integer, Integer>> {
+
+    public ConstantPropagation(ControlFlowGraph cfg) {
+        super(cfg, Direction.FORWARD);
+    }
+
+    @Override
+    protected Map<Integer, Integer> boundary() {
+        return new HashMap<>();
+    }
+
+    @Override
+    protected Map<Integer, Integer> meet(Map<Integer, Integer> a, Map<Integer, Integer> b) {
+        Map<Integer, Integer> common = new HashMap<>(a);
+        common.entrySet().removeIf(entry -> !entry.getValue().equals(b.get(entry.getKey())));
+        return common;
+    }
+
+    @Override
+    protected Map<Integer, Integer> transfer(BasicBlock block, Map<Integer, Integer> valuesIn) {
+        Map<Integer, Integer> values = new HashMap<>(valuesIn);
+        new Simulator(values).simulate(block);
+        return values;
+    }
+
+    /**
+     * @return the LOAD_FRAME instructions of the graph that are known to
+     * load a constant, with the value they load
+     */
+    public Map<Instruction, Integer> getConstantLoads() {
+        Map<Instruction, Integer> loads = new IdentityHashMap<>();
+        for (BasicBlock block : cfg.getBlocks()) {
+            Map<Integer, Integer> valuesIn = getIn(block);
+            if (valuesIn == null) {
+                continue;
+            }
+            new Simulator(new HashMap<>(valuesIn)) {
+                @Override
+                protected void read(int slot, Instruction inst) {
+                    Integer value = slotValue(slot);
+                    if (value != null) {
+                        loads.put(inst, value);
+                    }
+                }
+            }.simulate(block);
+        }
+        return loads;
+    }
+
+    /**
+     * Simulates a block updating the known values of slots
+     */
+    private static class Simulator extends FrameSimulator {
+        private final Map<Integer, Integer> values;
+
+        Simulator(Map<Integer, Integer> values) {
+            this.values = values;
+        }
+
+        @Override
+        protected Integer slotValue(int slot) {
+            return values.get(slot);
+        }
+
+        @Override
+        protected void write(int slot, Integer value, Instruction inst) {
+            if (slot == ANY_SLOT) {
+                values.clear();
+            } else if (value == null) {
+                values.remove(slot);
+            } else {
+                values.put(slot, value);
+            }
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package cfg;
+
+import java.util.*;
+
+import machine.Instruction;
+import machine.Operation;
+import tree.Code;
+
+/**
+ * class ControlFlowGraph - the code of a single procedure as basic blocks
+ * with explicit control flow edges between them.
+ * A graph is built from generated code, in which branches are a LOAD_CON
+ * of a relative offset followed by BR, BR_FALSE or BR_TRUE, and can be
+ * lowered back to code, with the branch offsets recomputed.
+ */
+public class ControlFlowGraph {
+    /**
+     * Blocks in layout order; the first block is the entry
+     */
+    private final List<BasicBlock> blocks = new ArrayList<>();
+
+    private ControlFlowGraph() {
+    }
+
+    public List<BasicBlock> getBlocks() {
+        return blocks;
+    }
+
+    public BasicBlock getEntry() {
+        return blocks.get(0);
+    }
+
+    /**
+     * Build the control flow graph for the code of a procedure.
+     * All branches must be within the code.
+     */
+    public static ControlFlowGraph build(Code code) {
+        ControlFlowGraph cfg = new ControlFlowGraph();
+        List<Instruction> instructions = code.getInstructionList();
+        int count = instructions.size();
+        /* Word address of each instruction relative to the start */
+        int[] address = new int[count + 1];
+        for (int i = 0; i < count; i++) {
+            address[i + 1] = address[i] + instructions.get(i).getSize();
+        }
+        /* Find the addresses at which blocks start */
+        Set<Integer> leaders = new HashSet<>();
+        leaders.add(0);
+        for (int i = 0; i < count; i++) {
+            Operation op = instructions.get(i).getOperation();
+            if (isBranch(op)) {
+                leaders.add(branchDestination(instructions, address, i));
+                leaders.add(address[i + 1]);
+            } else if (op == Operation.RETURN || op == Operation.STOP) {
+                leaders.add(address[i + 1]);
+            }
+        }
+        /* Split the instructions into blocks */
+        Map<Integer, BasicBlock> blockAt = new HashMap<>();
+        Map<BasicBlock, Integer> destinations = new HashMap<>();
+        BasicBlock current = cfg.newBlock();
+        blockAt.put(0, current);
+        boolean hasCode = false;
+        for (int i = 0; i < count; i++) {
+            Instruction inst = instructions.get(i);
+            if (hasCode && leaders.contains(address[i])) {
+                current = cfg.newBlock();
+                blockAt.put(address[i], current);
+                hasCode = false;
+            }
+            if (inst instanceof Instruction.LabelInstruction) {
+                /* Labels are regenerated when the graph is lowered */
+                continue;
+            }
+            if (isBranch(inst.getOperation())) {
+                /* The LOAD_CON of the offset is replaced by the edge */
+                List<Instruction> blockInstructions = current.getInstructions();
+                blockInstructions.remove(blockInstructions.size() - 1);
+                current.setTerminator(inst.getOperation());
+                destinations.put(current, branchDestination(instructions, address, i));
+            } else {
+                current.getInstructions().add(inst);
+            }
+            hasCode = hasCode || inst.getSize() != 0;
+        }
+        /* Link the blocks */
+        for (int i = 0; i < cfg.blocks.size(); i++) {
+            BasicBlock block = cfg.blocks.get(i);
+            if (block.getTerminator() != null) {
+                BasicBlock target = blockAt.get(destinations.get(block));
+                if (target == null) {
+                    /* A branch to the end of the code */
+                    target = cfg.newBlock();
+                    blockAt.put(address[count], target);
+                }
+                block.setBranchTarget(target);
+            }
+            Operation last = block.getLastOperation();
+            if (block.getTerminator() != Operation.BR && last != Operation.RETURN
+                    && last != Operation.STOP && i + 1 < cfg.blocks.size()) {
+                block.setFallThrough(cfg.blocks.get(i + 1));
+            }
+        }
+        cfg.computePredecessors();
+        return cfg;
+    }
+
+    private BasicBlock newBlock() {
+        BasicBlock block = new BasicBlock(blocks.size());
+        blocks.add(block);
+        return block;
+    }
+
+    private static boolean isBranch(Operation op) {
+        return op == Operation.BR || op == Operation.BR_FALSE || op == Operation.BR_TRUE;
+    }
+
+    /**
+     * @return the address branched to by the branch instruction at index i,
+     * which must be immediately preceded by the LOAD_CON of its offset.
+     */
+    private static int branchDestination(List<Instruction> instructions,
+                                         int[] address, int i) {
+        if (i == 0 || !(instructions.get(i - 1) instanceof
+                Instruction.LoadConInstruction offset)) {
+            throw new Error("Control flow graph: branch offset is not a constant");
+        }
+        return address[i + 1] + offset.getValue();
+    }
+
+    /**
+     * Recompute the predecessors of each block from the successor edges.
+     */
+    public void computePredecessors() {
+        for (BasicBlock block : blocks) {
+            block.getPredecessors().clear();
+        }
+        for (BasicBlock block : blocks) {
+            for (BasicBlock successor : block.getSuccessors()) {
+                successor.getPredecessors().add(block);
+            }
+        }
+    }
+
+    /**
+     * Redirect branches to empty blocks that just branch elsewhere
+     * to the final destination.
+     */
+    public void threadJumps() {
+        for (BasicBlock block : blocks) {
+            if (block.getBranchTarget() != null) {
+                block.setBranchTarget(skipEmpty(block.getBranchTarget()));
+            }
+        }
+        computePredecessors();
+    }
+
+    /**
+     * @return the block reached by following unconditional branches
+     * from empty blocks
+     */
+    private static BasicBlock skipEmpty(BasicBlock block) {
+        Set<BasicBlock> visited = new HashSet<>();
+        while (block.isEmpty() && block.getTerminator() == Operation.BR
+                && visited.add(block)) {
+            block = block.getBranchTarget();
+        }
+        return block;
+    }
+
+    /**
+     * Remove the blocks that cannot be reached from the entry block.
+     */
+    public void removeUnreachable() {
+        Set<BasicBlock> reached = new HashSet<>();
+        Deque<BasicBlock> work = new ArrayDeque<>();
+        work.push(getEntry());
+        reached.add(getEntry());
+        while (!work.isEmpty()) {
+            for (BasicBlock successor : work.pop().getSuccessors()) {
+                if (reached.add(successor)) {
+                    work.push(successor);
+                }
+            }
+        }
+        blocks.removeIf(block -> !reached.contains(block));
+        computePredecessors();
+    }
+
+    /**
+     * Replace each load of a local of the frame known to hold a constant
+     * by a load of the constant, where the slot loaded is pushed as a
+     * constant immediately before the load.
+     */
+    public void propagateConstants() {
+        ConstantPropagation constants = new ConstantPropagation(this);
+        constants.solve();
+        Map<Instruction, Integer> loads = constants.getConstantLoads();
+        for (BasicBlock block : blocks) {
+            List<Instruction> instructions = block.getInstructions();
+            for (int i = 0; i < instructions.size(); i++) {
+                Integer value = loads.get(instructions.get(i));
+                int address = previous(instructions, i);
+                if (value != null && address >= 0 && isConstant(instructions.get(address))) {
+                    instructions.set(i, new Instruction.LoadConInstruction(value));
+                    instructions.remove(address);
+                    i--;
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove each store to a local of the frame that is not read before
+     * it is next written or the procedure returns, where the slot stored
+     * to is pushed as a constant immediately before the store. The value
+     * is popped rather than stored, or not pushed at all if it is also
+     * a constant.
+     */
+    public void removeDeadStores() {
+        Liveness liveness = new Liveness(this);
+        liveness.solve();
+        for (BasicBlock block : blocks) {
+            Set<Instruction> dead = liveness.getDeadStores(block);
+            List<Instruction> instructions = block.getInstructions();
+            for (int i = instructions.size() - 1; i >= 0; i--) {
+                int address = previous(instructions, i);
+                if (!dead.contains(instructions.get(i)) || address < 0 ||
+                        !isConstant(instructions.get(address))) {
+                    continue;
+                }
+                int value = previous(instructions, address);
+                if (value >= 0 && isConstant(instructions.get(value))) {
+                    instructions.remove(i);
+                    instructions.remove(address);
+                    instructions.remove(value);
+                    i = value;
+                } else {
+                    instructions.set(i, new Instruction(Operation.POP));
+                    instructions.remove(address);
+                    i = address;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the index of the last instruction before index i that
+     * generates code, or -1 if there is none
+     */
+    private static int previous(List<Instruction> instructions, int i) {
+        do {
+            i--;
+        } while (i >= 0 && instructions.get(i).getSize() == 0);
+        return i;
+    }
+
+    /**
+     * @return true iff the instruction just pushes a constant
+     */
+    private static boolean isConstant(Instruction inst) {
+        Operation op = inst.getOperation();
+        return op == Operation.ZERO || op == Operation.ONE ||
+                inst.getClass() == Instruction.LoadConInstruction.class;
+    }
+
+    /**
+     * Generate code for the blocks in layout order. Branches are generated
+     * to labels that are resolved once all the blocks have been generated.
+     * A branch to the next block in the layout is omitted, and a branch is
+     * added where the block control falls through to is not the next one.
+     */
+    public Code lower() {
+        Map<BasicBlock, Instruction.LabelInstruction> labels = new HashMap<>();
+        for (BasicBlock block : blocks) {
+            labels.put(block, new Instruction.LabelInstruction("B" + block.getId()));
+        }
+        /* Only blocks that are branched to need their labels */
+        Set<BasicBlock> branchedTo = new HashSet<>();
+        for (int i = 0; i < blocks.size(); i++) {
+            BasicBlock block = blocks.get(i);
+            BasicBlock next = i + 1 < blocks.size() ? blocks.get(i + 1) : null;
+            if (block.getTerminator() != null &&
+                    (block.getTerminator() != Operation.BR || block.getBranchTarget() != next)) {
+                branchedTo.add(block.getBranchTarget());
+            }
+            if (block.getFallThrough() != null && block.getFallThrough() != next) {
+                branchedTo.add(block.getFallThrough());
+            }
+        }
+        Code code = new Code();
+        for (int i = 0; i < blocks.size(); i++) {
+            BasicBlock block = blocks.get(i);
+            BasicBlock next = i + 1 < blocks.size() ? blocks.get(i + 1) : null;
+            if (branchedTo.contains(block)) {
+                code.genLabel(labels.get(block));
+            }
+            for (Instruction inst : block.getInstructions()) {
+                code.appendInstruction(inst);
+            }
+            Operation terminator = block.getTerminator();
+            if (terminator == Operation.BR) {
+                if (block.getBranchTarget() != next) {
+                    code.genJumpAlways(labels.get(block.getBranchTarget()));
+                }
+            } else if (terminator == Operation.BR_FALSE) {
+                code.genJumpIfFalse(labels.get(block.getBranchTarget()));
+            } else if (terminator == Operation.BR_TRUE) {
+                code.genJumpIfTrue(labels.get(block.getBranchTarget()));
+            }
+            if (block.getFallThrough() != null && block.getFallThrough() != next) {
+                code.genJumpAlways(labels.get(block.getFallThrough()));
+            }
+        }
+        code.resolveLabels();
+        return code;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        for (BasicBlock block : blocks) {
+            s.append(block).append(System.lineSeparator());
+        }
+        return s.toString();
+    }
+}
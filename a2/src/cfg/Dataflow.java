@@ -0,0 +1,126 @@
+package cfg;
+
+import java.util.*;
+
+/**
+ * class Dataflow - generic iterative solver for dataflow problems over
+ * the blocks of a control flow graph.
+ * Subclasses give the direction of the analysis, the boundary fact,
+ * the meet of facts and the transfer function of a block.
+ * Facts must be immutable and implement equals.
+ * A null fact stands for "no information yet" (e.g. an unreached block)
+ * and is the identity of the meet. In a backward analysis a block none
+ * of whose successors has a fact yet (e.g. within a loop with no exit)
+ * starts from the boundary fact.
+ *
+ * @param <F> the type of the facts computed
+ */
+public abstract class Dataflow<F> {
+
+    public enum Direction {FORWARD, BACKWARD}
+
+    protected final ControlFlowGraph cfg;
+    private final Direction direction;
+    /**
+     * Fact at the start of each block
+     */
+    private final Map<BasicBlock, F> in = new HashMap<>();
+    /**
+     * Fact at the end of each block
+     */
+    private final Map<BasicBlock, F> out = new HashMap<>();
+
+    protected Dataflow(ControlFlowGraph cfg, Direction direction) {
+        this.cfg = cfg;
+        this.direction = direction;
+    }
+
+    /**
+     * @return the fact at the start of the entry block for a forward
+     * analysis, or at the end of exit blocks for a backward analysis
+     */
+    protected abstract F boundary();
+
+    /**
+     * @return the meet (combination) of two non-null facts
+     */
+    protected abstract F meet(F a, F b);
+
+    /**
+     * @return the fact after the block given the fact before it (forward),
+     * or the fact before the block given the fact after it (backward)
+     */
+    protected abstract F transfer(BasicBlock block, F fact);
+
+    /**
+     * Iterate to a fixed point.
+     */
+    public void solve() {
+        boolean forward = direction == Direction.FORWARD;
+        Deque<BasicBlock> work = new ArrayDeque<>();
+        Set<BasicBlock> queued = new HashSet<>();
+        List<BasicBlock> order = new ArrayList<>(cfg.getBlocks());
+        if (!forward) {
+            Collections.reverse(order);
+        }
+        for (BasicBlock block : order) {
+            work.add(block);
+            queued.add(block);
+        }
+        while (!work.isEmpty()) {
+            BasicBlock block = work.remove();
+            queued.remove(block);
+            /* Combine the facts flowing into the block */
+            F fact = null;
+            List<BasicBlock> sources = forward ? block.getPredecessors()
+                    : block.getSuccessors();
+            if (forward && block == cfg.getEntry()) {
+                fact = boundary();
+            }
+            for (BasicBlock source : sources) {
+                fact = meetOf(fact, (forward ? out : in).get(source));
+            }
+            if (fact == null) {
+                if (forward) {
+                    continue;
+                }
+                fact = boundary();
+            }
+            (forward ? in : out).put(block, fact);
+            F result = transfer(block, fact);
+            Map<BasicBlock, F> results = forward ? out : in;
+            if (!result.equals(results.get(block))) {
+                results.put(block, result);
+                for (BasicBlock next : forward ? block.getSuccessors()
+                        : block.getPredecessors()) {
+                    if (queued.add(next)) {
+                        work.add(next);
+                    }
+                }
+            }
+        }
+    }
+
+    private F meetOf(F a, F b) {
+        if (a == null) {
+            return b;
+        } else if (b == null) {
+            return a;
+        }
+        return meet(a, b);
+    }
+
+    /**
+     * @return the fact at the start of the block, null if not reached
+     */
+    public F getIn(BasicBlock block) {
+        return in.get(block);
+    }
+
+    /**
+     * @return the fact at the end of the block, null if not reached
+     */
+    public F getOut(BasicBlock block) {
+        return out.get(block);
+    }
+}
@@ -0,0 +1,335 @@
+package cfg;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import machine.Instruction;
+import machine.Operation;
+import machine.StackMachine;
+
+/**
+ * class FrameSimulator - abstract interpretation of the instructions of
+ * a basic block to find the reads and writes of slots (frame-relative
+ * addresses) of the current stack frame.
+ * Values on the expression stack are tracked as constants where possible,
+ * so that the address of an access such as "LOAD_CON 3; LOAD_FRAME" is
+ * known. Addresses within the frames of enclosing procedures, reached
+ * through the static link, are known not to be in the current frame.
+ * Any other access (or a CALL, whose callee may be a nested procedure)
+ * is reported with the slot ANY_SLOT.
+ * Values on the stack at the start of a block are unknown.
+ */
+public abstract class FrameSimulator {
+    /**
+     * Slot reported for an access to an unknown slot of the frame
+     */
+    public static final int ANY_SLOT = -1;
+    /**
+     * Offset of the first local from the frame pointer, after the
+     * static link, dynamic link and return address
+     */
+    public static final int LOCALS_BASE = 3;
+
+    /**
+     * Abstract value on the expression stack
+     */
+    private enum Kind {
+        UNKNOWN,       // any value
+        CONSTANT,      // a known value
+        FRAME_LINK,    // absolute address of the frame of an enclosing procedure
+        OUTER_ABS,     // absolute address within such a frame
+        OUTER_LOCAL    // such an address made relative to the current frame
+    }
+
+    private record Value(Kind kind, int constant) {
+        static final Value UNKNOWN = new Value(Kind.UNKNOWN, 0);
+
+        static Value of(Integer constant) {
+            return constant == null ? UNKNOWN : new Value(Kind.CONSTANT, constant);
+        }
+
+        Integer getConstant() {
+            return kind == Kind.CONSTANT ? constant : null;
+        }
+    }
+
+    /**
+     * Abstract expression stack
+     */
+    private final List<Value> stack = new ArrayList<>();
+
+    /**
+     * @return the known value of a slot of the frame, or null if unknown
+     */
+    protected Integer slotValue(int slot) {
+        return null;
+    }
+
+    /**
+     * Called for a read of a slot (possibly ANY_SLOT) by an instruction.
+     */
+    protected void read(int slot, Instruction inst) {
+    }
+
+    /**
+     * Called for a write of a value (null if unknown) to a slot
+     * (possibly ANY_SLOT) by an instruction.
+     */
+    protected void write(int slot, Integer value, Instruction inst) {
+    }
+
+    /**
+     * Called after each instruction is simulated.
+     */
+    protected void after(Instruction inst) {
+    }
+
+    /**
+     * Simulate the instructions of a block (excluding its terminating branch).
+     */
+    public void simulate(BasicBlock block) {
+        stack.clear();
+        for (Instruction inst : block.getInstructions()) {
+            simulate(inst);
+            after(inst);
+        }
+    }
+
+    private void push(Value value) {
+        stack.add(value);
+    }
+
+    private void pushConstant(Integer value) {
+        stack.add(Value.of(value));
+    }
+
+    private Value pop() {
+        if (stack.isEmpty()) {
+            return Value.UNKNOWN;
+        }
+        return stack.remove(stack.size() - 1);
+    }
+
+    private Integer popConstant() {
+        return pop().getConstant();
+    }
+
+    /**
+     * The stack contents are no longer known.
+     */
+    private void forgetStack() {
+        stack.clear();
+    }
+
+    private void simulate(Instruction inst) {
+        Operation op = inst.getOperation();
+        switch (op) {
+            case COMMENT, NO_OP -> {
+            }
+            case LOAD_CON -> {
+                if (inst instanceof Instruction.ProcRefInstruction) {
+                    push(Value.UNKNOWN);
+                } else {
+                    pushConstant(((Instruction.LoadConInstruction) inst).getValue());
+                }
+            }
+            case ZERO -> pushConstant(0);
+            case ONE -> pushConstant(1);
+            case LOAD_FRAME -> {
+                Value address = pop();
+                if (address.kind() == Kind.CONSTANT) {
+                    int slot = address.constant();
+                    read(slot, inst);
+                    if (slot == 0) {
+                        push(new Value(Kind.FRAME_LINK, 0));
+                    } else {
+                        pushConstant(slotValue(slot));
+                    }
+                } else {
+                    if (address.kind() != Kind.OUTER_LOCAL) {
+                        read(ANY_SLOT, inst);
+                    }
+                    push(Value.UNKNOWN);
+                }
+            }
+            case STORE_FRAME -> {
+                Value address = pop();
+                Integer value = popConstant();
+                if (address.kind() == Kind.CONSTANT) {
+                    write(address.constant(), value, inst);
+                } else if (address.kind() != Kind.OUTER_LOCAL) {
+                    write(ANY_SLOT, null, inst);
+                }
+            }
+            case LOAD_ABS -> {
+                Value address = pop();
+                if (address.kind() == Kind.FRAME_LINK) {
+                    /* Following the static link chain */
+                    push(address);
+                } else {
+                    if (address.kind() != Kind.OUTER_ABS) {
+                        read(ANY_SLOT, inst);
+                    }
+                    push(Value.UNKNOWN);
+                }
+            }
+            case ADD -> {
+                Value right = pop();
+                Value left = pop();
+                if (right.kind() == Kind.CONSTANT && left.kind() == Kind.CONSTANT) {
+                    pushConstant(left.constant() + right.constant());
+                } else if (left.kind() == Kind.FRAME_LINK && right.kind() == Kind.CONSTANT
+                        || right.kind() == Kind.FRAME_LINK && left.kind() == Kind.CONSTANT) {
+                    push(new Value(Kind.OUTER_ABS, 0));
+                } else {
+                    push(Value.UNKNOWN);
+                }
+            }
+            case ADD_CON -> {
+                Value left = pop();
+                int right = ((Instruction.OperandInstruction) inst).getValue();
+                if (left.kind() == Kind.CONSTANT) {
+                    pushConstant(left.constant() + right);
+                } else if (left.kind() == Kind.FRAME_LINK) {
+                    push(new Value(Kind.OUTER_ABS, 0));
+                } else {
+                    push(Value.UNKNOWN);
+                }
+            }
+            case TO_LOCAL -> {
+                Value address = pop();
+                if (address.kind() == Kind.OUTER_ABS) {
+                    push(new Value(Kind.OUTER_LOCAL, 0));
+                } else {
+                    push(Value.UNKNOWN);
+                }
+            }
+            case TO_GLOBAL, NOT, NEGATE, ALLOC_HEAP -> {
+                Integer arg = popConstant();
+                if (arg != null && op == Operation.NOT) {
+                    pushConstant(~arg);
+                } else if (arg != null && op == Operation.NEGATE) {
+                    pushConstant(-arg);
+                } else {
+                    push(Value.UNKNOWN);
+                }
+            }
+            case SUB, MPY, DIV, OR, AND, XOR, SHIFT_LEFT, SHIFT_RIGHT, EQUAL, LESS, LESSEQ -> {
+                Integer right = popConstant();
+                Integer left = popConstant();
+                pushConstant(left == null || right == null ? null : fold(op, left, right));
+            }
+            case BOUND -> {
+                Integer upper = popConstant();
+                Integer lower = popConstant();
+                Integer value = popConstant();
+                if (upper == null || lower == null || value == null) {
+                    push(Value.UNKNOWN);
+                } else {
+                    pushConstant(lower <= value && value <= upper ? 1 : 0);
+                }
+            }
+            case CHECK_BOUNDS -> {
+                /* The value checked is left unchanged */
+                pop();
+                pop();
+            }
+            case CHECK_BOUNDS_CON -> {
+                /* The value checked is left unchanged */
+            }
+            case POP, WRITE, STOP -> pop();
+            case DUP -> {
+                Value value = pop();
+                push(value);
+                push(value);
+            }
+            case SWAP -> {
+                Value top = pop();
+                Value second = pop();
+                push(top);
+                push(second);
+            }
+            case READ -> push(Value.UNKNOWN);
+            case ALLOC_INIT -> {
+                Integer size = popConstant();
+                if (size == null) {
+                    forgetStack();
+                } else {
+                    for (int i = 0; i < size; i++) {
+                        pop();
+                    }
+                }
+                push(Value.UNKNOWN);
+            }
+            case ALLOC_STACK -> {
+                /* Allocates (and initialises) the locals of the frame
+                 * on entry to the procedure */
+                Integer size = popConstant();
+                if (size == null) {
+                    write(ANY_SLOT, null, inst);
+                } else {
+                    for (int i = 0; i < size; i++) {
+                        write(LOCALS_BASE + i, StackMachine.NULL_ADDR, inst);
+                    }
+                }
+                forgetStack();
+            }
+            case DEALLOC_STACK -> {
+                pop();
+                forgetStack();
+            }
+            case CALL -> {
+                /* The static link is consumed by the return */
+                pop();
+                pop();
+                read(ANY_SLOT, inst);
+                write(ANY_SLOT, null, inst);
+            }
+            case LOAD_FIELD -> {
+                /* The record is at an unknown absolute address */
+                pop();
+                pop();
+                read(ANY_SLOT, inst);
+                push(Value.UNKNOWN);
+            }
+            case STORE_FIELD -> {
+                pop();
+                pop();
+                pop();
+                write(ANY_SLOT, null, inst);
+            }
+            case LOAD_MULTI, STORE_MULTI, COPY, LOAD_STACK, STORE_STACK -> {
+                read(ANY_SLOT, inst);
+                if (op != Operation.LOAD_MULTI && op != Operation.LOAD_STACK) {
+                    write(ANY_SLOT, null, inst);
+                }
+                forgetStack();
+            }
+            default -> {
+                /* RETURN, and branches (which are not part of blocks) */
+                forgetStack();
+            }
+        }
+    }
+
+    /**
+     * @return the result of a binary operation on constants, or null if
+     * it would not complete normally (division by zero)
+     */
+    private static Integer fold(Operation op, int left, int right) {
+        return switch (op) {
+            case SUB -> left - right;
+            case MPY -> left * right;
+            case DIV -> right == 0 ? null : left / right;
+            case OR -> left | right;
+            case AND -> left & right;
+            case XOR -> left ^ right;
+            case SHIFT_LEFT -> left << right;
+            case SHIFT_RIGHT -> left >> right;
+            case EQUAL -> left == right ? 1 : 0;
+            case LESS -> left < right ? 1 : 0;
+            case LESSEQ -> left <= right ? 1 : 0;
+            default -> null;
+        };
+    }
+}
@@ -0,0 +1,152 @@
+package cfg;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import machine.Instruction;
+import machine.Operation;
+
+/**
+ * class Liveness - backward analysis of the slots of the current frame
+ * that may be read before they are next written.
+ * The links of the frame (static link, dynamic link and return address)
+ * are live on exit from the procedure.
+ * The frame is taken to be large enough for every slot the code accesses.
+ */
+public class Liveness extends Dataflow<BitSet> {
+    /**
+     * Number of slots in the frame, including the links
+     */
+    private final int frameSize;
+
+    public Liveness(ControlFlowGraph cfg) {
+        super(cfg, Direction.BACKWARD);
+        this.frameSize = frameSize(cfg);
+    }
+
+    /**
+     * @return the number of slots of the frame up to the last slot
+     * accessed by the code of the graph
+     */
+    private static int frameSize(ControlFlowGraph cfg) {
+        int[] size = {FrameSimulator.LOCALS_BASE};
+        FrameSimulator simulator = new FrameSimulator() {
+            @Override
+            protected void read(int slot, Instruction inst) {
+                size[0] = Math.max(size[0], slot + 1);
+            }
+
+            @Override
+            protected void write(int slot, Integer value, Instruction inst) {
+                size[0] = Math.max(size[0], slot + 1);
+            }
+        };
+        for (BasicBlock block : cfg.getBlocks()) {
+            simulator.simulate(block);
+        }
+        return size[0];
+    }
+
+    @Override
+    protected BitSet boundary() {
+        BitSet live = new BitSet(frameSize);
+        live.set(0, FrameSimulator.LOCALS_BASE);
+        return live;
+    }
+
+    @Override
+    protected BitSet meet(BitSet a, BitSet b) {
+        BitSet live = (BitSet) a.clone();
+        live.or(b);
+        return live;
+    }
+
+    /**
+     * A read or write of a slot by an instruction
+     */
+    private record Access(boolean write, int slot, Instruction inst) {
+    }
+
+    /**
+     * @return the accesses of the block in order
+     */
+    private static List<Access> accesses(BasicBlock block) {
+        List<Access> accesses = new ArrayList<>();
+        new FrameSimulator() {
+            @Override
+            protected void read(int slot, Instruction inst) {
+                accesses.add(new Access(false, slot, inst));
+            }
+
+            @Override
+            protected void write(int slot, Integer value, Instruction inst) {
+                accesses.add(new Access(true, slot, inst));
+            }
+        }.simulate(block);
+        return accesses;
+    }
+
+    @Override
+    protected BitSet transfer(BasicBlock block, BitSet liveOut) {
+        /* Apply the accesses of the block in reverse */
+        List<Access> accesses = accesses(block);
+        BitSet live = (BitSet) liveOut.clone();
+        for (int i = accesses.size() - 1; i >= 0; i--) {
+            update(live, accesses.get(i));
+        }
+        return live;
+    }
+
+    /**
+     * Update the slots live after an access to those live before it.
+     */
+    private void update(BitSet live, Access access) {
+        if (access.write()) {
+            /* A write to an unknown slot kills nothing */
+            if (access.slot() != FrameSimulator.ANY_SLOT) {
+                live.clear(access.slot());
+            }
+        } else if (access.slot() == FrameSimulator.ANY_SLOT) {
+            live.set(0, frameSize);
+        } else {
+            live.set(access.slot());
+        }
+    }
+
+    /**
+     * @return the STORE_FRAME instructions of the block that write a
+     * local of the frame that is not read before it is next written or
+     * the procedure returns
+     */
+    public Set<Instruction> getDeadStores(BasicBlock block) {
+        Set<Instruction> dead = Collections.newSetFromMap(new IdentityHashMap<>());
+        BitSet liveOut = getOut(block);
+        if (liveOut == null) {
+            return dead;
+        }
+        List<Access> accesses = accesses(block);
+        BitSet live = (BitSet) liveOut.clone();
+        for (int i = accesses.size() - 1; i >= 0; i--) {
+            Access access = accesses.get(i);
+            if (access.write() && access.slot() >= FrameSimulator.LOCALS_BASE
+                    && !live.get(access.slot())
+                    && access.inst().getOperation() == Operation.STORE_FRAME) {
+                dead.add(access.inst());
+            }
+            update(live, access);
+        }
+        return dead;
+    }
+
+    /**
+     * @return true iff the slot may be read after the end of the block
+     */
+    public boolean isLiveOut(BasicBlock block, int slot) {
+        BitSet live = getOut(block);
+        return live == null || live.get(slot);
+    }
+}
@@ -0,0 +1,98 @@
+package machine;
+
+import java.io.*;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * class BranchProfile - the number of times the condition of each
+ * if statement and while loop evaluated to true and to false in a run
+ * of the program. The conditions are identified by keys made up of the
+ * name of the procedure containing them and their source location, so
+ * that a profile recorded by one run can be used by a later compilation
+ * of the same program.
+ * A profile is saved as a text file with a line per condition:
+ * the procedure name, line:column, and the true and false counts.
+ */
+public class BranchProfile {
+    /**
+     * Counts of true and false outcomes indexed by key
+     */
+    private final Map<String, long[]> counts = new TreeMap<>();
+
+    /**
+     * @return the key identifying the condition at the location
+     * within the procedure
+     */
+    public static String key(String procedure, int line, int column) {
+        return procedure + " " + line + ":" + column;
+    }
+
+    /**
+     * Record an evaluation of the condition identified by the key.
+     */
+    public void record(String key, boolean outcome) {
+        counts.computeIfAbsent(key, k -> new long[2])[outcome ? 0 : 1]++;
+    }
+
+    /**
+     * @return true iff the condition has been recorded
+     */
+    public boolean contains(String key) {
+        return counts.containsKey(key);
+    }
+
+    /**
+     * @return the number of times the condition was true
+     */
+    public long getTrueCount(String key) {
+        long[] count = counts.get(key);
+        return count == null ? 0 : count[0];
+    }
+
+    /**
+     * @return the number of times the condition was false
+     */
+    public long getFalseCount(String key) {
+        long[] count = counts.get(key);
+        return count == null ? 0 : count[1];
+    }
+
+    /**
+     * @return the profile read from the file
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    public static BranchProfile load(File file) throws IOException {
+        BranchProfile profile = new BranchProfile();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.trim().split("\\s+");
+                if (fields.length != 4) {
+                    throw new IOException("malformed profile line: " + line);
+                }
+                try {
+                    profile.counts.put(fields[0] + " " + fields[1], new long[]{
+                            Long.parseLong(fields[2]), Long.parseLong(fields[3])});
+                } catch (NumberFormatException e) {
+                    throw new IOException("malformed profile line: " + line);
+                }
+            }
+        }
+        return profile;
+    }
+
+    /**
+     * Write the profile to the file.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public void save(File file) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
+            for (Map.Entry<String, long[]> entry : counts.entrySet()) {
+                writer.println(entry.getKey() + " " + entry.getValue()[0] +
+                        " " + entry.getValue()[1]);
+            }
+        }
+    }
+}
@@ -16,6 +16,17 @@ public class Instruction {
         machine.generateWord(op.ordinal());
     }
 
+    public Operation getOperation() {
+        return op;
+    }
+
+    /**
+     * @return the number of words of code generated for the instruction
+     */
+    public int getSize() {
+        return op.getSize();
+    }
+
     @Override
     public String toString() {
         return op.toString();
@@ -37,6 +48,16 @@ public class Instruction {
             /* A comment does not generate any code */
         }
 
+        @Override
+        public Operation getOperation() {
+            return Operation.COMMENT;
+        }
+
+        @Override
+        public int getSize() {
+            return 0;
+        }
+
         @Override
         public String toString() {
             return "// " + comment;
@@ -44,13 +65,60 @@ public class Instruction {
     }
 
     /**
-     * LOAD_CON is the only instruction with a parameter
+     * A label marks a position in the code that branches may refer to.
+     * Like a comment it does not generate any code.
      */
-    public static class LoadConInstruction extends Instruction {
+    public static class LabelInstruction extends CommentInstruction {
+
+        public LabelInstruction(String name) {
+            super(name);
+        }
+
+        public String getName() {
+            return comment;
+        }
+
+        @Override
+        public String toString() {
+            return comment + ":";
+        }
+    }
+
+    /**
+     * A profile point identifies the conditional branch that immediately
+     * follows it (after the LOAD_CON of the branch offset) so that the
+     * stack machine can count the outcomes of the branch condition.
+     * Like a comment it does not generate any code.
+     */
+    public static class ProfilePointInstruction extends CommentInstruction {
+
+        public ProfilePointInstruction(String key) {
+            super(key);
+        }
+
+        public String getKey() {
+            return comment;
+        }
+
+        @Override
+        public void loadInstruction(StackMachine machine) {
+            machine.addProfilePoint(comment);
+        }
+
+        @Override
+        public String toString() {
+            return "// profile " + comment;
+        }
+    }
+
+    /**
+     * An instruction with a parameter in the following word
+     */
+    public static class OperandInstruction extends Instruction {
         protected int value;
 
-        public LoadConInstruction(int value) {
-            super(Operation.LOAD_CON);
+        public OperandInstruction(Operation op, int value) {
+            super(op);
             this.value = value;
         }
 
@@ -74,6 +142,51 @@ public class Instruction {
         }
     }
 
+    /**
+     * CHECK_BOUNDS_CON with the lower and upper bounds in the following
+     * two words
+     */
+    public static class CheckBoundsInstruction extends Instruction {
+        private final int lower;
+        private final int upper;
+
+        public CheckBoundsInstruction(int lower, int upper) {
+            super(Operation.CHECK_BOUNDS_CON);
+            this.lower = lower;
+            this.upper = upper;
+        }
+
+        public int getLower() {
+            return lower;
+        }
+
+        public int getUpper() {
+            return upper;
+        }
+
+        @Override
+        public void loadInstruction(StackMachine machine) {
+            super.loadInstruction(machine);
+            machine.generateWord(lower);
+            machine.generateWord(upper);
+        }
+
+        @Override
+        public String toString() {
+            return super.toString() + "(" + lower + "," + upper + ")";
+        }
+    }
+
+    /**
+     * LOAD_CON of a constant value
+     */
+    public static class LoadConInstruction extends OperandInstruction {
+
+        public LoadConInstruction(int value) {
+            super(Operation.LOAD_CON, value);
+        }
+    }
+
     /**
      * The addresses of procedures are resolved when the program is
      * loaded and the sizes of procedures are known.
@@ -88,6 +201,10 @@ public class Instruction {
             this.proc = proc;
         }
 
+        public SymEntry.ProcedureEntry getProcedure() {
+            return proc;
+        }
+
         @Override
         public void loadInstruction(StackMachine machine) {
             value = proc.getStart();
@@ -100,4 +217,27 @@ public class Instruction {
                     (value == StackMachine.NULL_ADDR ? "" : ("," + value)) + ")";
         }
     }
+
+    /**
+     * The LOAD_CON of the offset for a branch to a label. The offset is
+     * resolved once the code containing both the branch and the label
+     * has been assembled and hence this class extends LoadConInstruction.
+     */
+    public static class LabelRefInstruction extends LoadConInstruction {
+        private final LabelInstruction label;
+
+        public LabelRefInstruction(LabelInstruction label) {
+            super(0);
+            this.label = label;
+        }
+
+        public LabelInstruction getLabel() {
+            return label;
+        }
+
+        @Override
+        public String toString() {
+            return op.toString() + "(" + label.getName() + "," + value + ")";
+        }
+    }
 }
@@ -22,6 +22,7 @@ public enum Operation {
     SWAP(),            /* Swap top two stack words */
     /* Binary operators */
     ADD(),             /* Add */
+    SUB(),             /* Subtract */
     MPY(),             /* Multiply */
     DIV(),             /* Divide */
     OR(),              /* Bitwise or */
@@ -40,14 +41,19 @@ public enum Operation {
     WRITE(),           /* Write word to stdout */
 
     BOUND(),           /* Bounds check */
+    CHECK_BOUNDS(),    /* Bounds check halting if out of bounds */
+    CHECK_BOUNDS_CON(3), /* Bounds check against the next two words as bounds */
     /* Instructions for handling references to non-local variables */
     TO_GLOBAL(),       /* Covert local address on top of stack to global */
     TO_LOCAL(),        /* Covert global address on top of stack to local*/
     /* Load and store instructions */
     LOAD_CON(2),     /* Load next word as constant */
+    ADD_CON(2),      /* Add next word as constant */
     LOAD_ABS(),        /* Load from address in top of stack */
     STORE_FRAME(),     /* Store word in memory */
     LOAD_FRAME(),      /* Load word from memory frame relative */
+    LOAD_FIELD(),      /* Load field of record, trapping a nil record */
+    STORE_FIELD(),     /* Store field of record, trapping a nil record */
     STORE_STACK(),        /* Store word in memory relative to the top of the stack */
     LOAD_STACK(),         /* Load word from memory relative to the top of the stack */
     /* Load constants 0 and 1 */
@@ -55,6 +61,7 @@ public enum Operation {
     ONE(),             /* Load one */
     /* Allocating space on the heap */
     ALLOC_HEAP(),      /* Allocate memory from heap */
+    ALLOC_INIT(),      /* Allocate memory from heap initialised from stack */
     /* Loading multiple words onto the stack */
     LOAD_MULTI(),      /* Load multiple words onto stack */
     STORE_MULTI(),     /* Store multiple words from stack */
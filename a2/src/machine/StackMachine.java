@@ -5,6 +5,8 @@ import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
 import java.io.PrintStream;
 
 import source.ErrorHandler;
@@ -29,7 +31,7 @@ public class StackMachine {
     /**
      * Size of memory
      */
-    private final static int MEM_LIMIT = 10000;
+    public final static int MEM_LIMIT = 10000;
     /**
      * Address way outside memory
      */
@@ -47,6 +49,18 @@ public class StackMachine {
      * Stack machine running?
      */
     private boolean running = false;
+    /**
+     * Did the program run to completion without a runtime error?
+     */
+    private boolean completed = false;
+    /**
+     * Number of instructions executed
+     */
+    private long steps = 0;
+    /**
+     * Maximum number of instructions to execute
+     */
+    private long stepLimit = Long.MAX_VALUE;
 
     /**
      * Stack machine stop codes
@@ -112,6 +126,15 @@ public class StackMachine {
      * Top of stack limit = bottom of heap limit
      */
     private int limit = CODE_START;
+    /**
+     * Keys of the profile points indexed by the address of the
+     * conditional branch they identify
+     */
+    private final Map<Integer, String> profilePoints = new HashMap<>();
+    /**
+     * Profile in which to record branch outcomes, null if not profiling
+     */
+    private BranchProfile profile = null;
     /**
      * Standard input line reader
      */
@@ -164,6 +187,30 @@ public class StackMachine {
         tracing = flags;
     }
 
+    /**
+     * Record the outcomes of the conditions of the branches at profile
+     * points in the profile while running.
+     */
+    public void setProfile(BranchProfile profile) {
+        this.profile = profile;
+    }
+
+    /**
+     * Limit the number of instructions executed by a run; a run
+     * exceeding the limit ends with a runtime error.
+     */
+    public void setStepLimit(long stepLimit) {
+        this.stepLimit = stepLimit;
+    }
+
+    /**
+     * @return true iff the last run returned from the main program
+     * rather than ending with a runtime error
+     */
+    public boolean hasCompleted() {
+        return completed;
+    }
+
     /**
      * Begin executing the code stored in the stack machine.
      * Runs until a STOP opcode, a return to 0, or an illegal condition
@@ -183,8 +230,12 @@ public class StackMachine {
             push(0); // Push dummy dynamic link for main program
             push(0); //Push return address for main program
             while (running) {
+                if (++steps > stepLimit) {
+                    throw new PL0_Runtime_Error("step limit exceeded");
+                }
                 execInstruction();
             }
+            completed = true;
         } catch (PL0_Runtime_Error e) {
             running = false;
             outStream.println("\nRuntime error: " + e.getMessage());
@@ -197,6 +248,14 @@ public class StackMachine {
 
 //*********************** Public Code Generators ************************
 
+    /**
+     * Mark the conditional branch following the LOAD_CON of its offset
+     * at the current location as the profile point with the given key.
+     */
+    public void addProfilePoint(String key) {
+        profilePoints.put(currLoc + Operation.LOAD_CON.getSize(), key);
+    }
+
     /**
      * Store the given word (with associated name) into the code buffer
      *
@@ -265,6 +324,30 @@ public class StackMachine {
         }
     }
 
+    /**
+     * Return the absolute address of a field of a record,
+     * trapping an access to the nil record
+     */
+    private int fieldAddress(int record, int offset) throws PL0_Runtime_Error {
+        if (record == NULL_ADDR) {
+            throw new PL0_Runtime_Error("nil record access");
+        }
+        return record + offset;
+    }
+
+    /**
+     * Record the outcome of the condition of the conditional branch
+     * just fetched if it is a profile point
+     */
+    private void recordBranch(int test) {
+        if (profile != null) {
+            String key = profilePoints.get(pc - 1);
+            if (key != null) {
+                profile.record(key, test == Type.TRUE_VALUE);
+            }
+        }
+    }
+
     /**
      * Return value stored at address
      */
@@ -411,8 +494,8 @@ public class StackMachine {
             String out;
             out = String.format("%nPC:%5d FP: %5d SP: %5d Limit: %5d Opcode: %s ",
                     pc-1, fp, sp, limit, inst);
-            if (inst == Operation.LOAD_CON) {
-                out += memory[pc] + " ";
+            for (int i = 1; i < inst.getSize(); i++) {
+                out += memory[pc + i - 1] + " ";
             }
             outStream.print(out);
         }
@@ -432,6 +515,7 @@ public class StackMachine {
                 /* If the second top value = FALSE_VALUE, jump to the destination */
                 int dest = pop();
                 int test = pop();
+                recordBranch(test);
                 if (test == Type.FALSE_VALUE) {
                     pc += dest;
                 } else if (test != Type.TRUE_VALUE) {
@@ -445,6 +529,7 @@ public class StackMachine {
                 /* If the second top value = TRUE_VALUE, jump to the destination */
                 int dest = pop();
                 int test = pop();
+                recordBranch(test);
                 if (test == Type.TRUE_VALUE) {
                     pc += dest;
                 } else if (test != Type.FALSE_VALUE) {
@@ -553,6 +638,11 @@ public class StackMachine {
                 push(val1);
                 push(val2);
             }
+            case SUB -> {
+                /* Subtract top from second top */
+                int subtrahend = pop();
+                push(pop() - subtrahend);
+            }
             case DIV -> {
                 /* Divide */
                 int divisor = pop();
@@ -636,6 +726,26 @@ public class StackMachine {
                     push(Predefined.BOOLEAN_TYPE.FALSE_VALUE); // out of bounds
                 }
             }
+            case CHECK_BOUNDS -> {
+                /* Halt unless the value below the bounds is within them.
+                The value is left on the stack */
+                int upper = pop();
+                int lower = pop();
+                int val = memory[sp - 1];
+                if (val < lower || upper < val) {
+                    throw new PL0_Runtime_Error("expression out of bounds");
+                }
+            }
+            case CHECK_BOUNDS_CON -> {
+                /* Halt unless the value on top of the stack is within the
+                bounds in the following two words. The value is left on the stack */
+                int lower = memory[pc++];
+                int upper = memory[pc++];
+                int val = memory[sp - 1];
+                if (val < lower || upper < val) {
+                    throw new PL0_Runtime_Error("expression out of bounds");
+                }
+            }
             case TO_GLOBAL ->
                 /* Adjust local to global */
                 push(pop() + fp);
@@ -645,11 +755,29 @@ public class StackMachine {
             case LOAD_CON ->
                 /* Load a constant value from the following word */
                 push(memory[pc++]);
+            case ADD_CON ->
+                /* Add the constant value in the following word */
+                push(pop() + memory[pc++]);
             case LOAD_ABS -> {
                 /* Load a value from address in top of stack */
                 address = pop();
                 push(loadValue(address));
             }
+            case LOAD_FIELD -> {
+                /* Load a field of the record whose absolute address is
+                 * second top of stack at the offset on top of stack */
+                int offset = pop();
+                address = fieldAddress(pop(), offset);
+                push(loadValue(address));
+            }
+            case STORE_FIELD -> {
+                /* Store the value third top of stack in a field of the
+                 * record whose absolute address is second top of stack
+                 * at the offset on top of stack */
+                int offset = pop();
+                address = fieldAddress(pop(), offset);
+                storeValue(address, pop());
+            }
             case STORE_FRAME -> {
                 /* Store a value into memory */
                 address = fp + pop();
@@ -692,6 +820,23 @@ public class StackMachine {
                     memory[i] = NULL_ADDR;
                 }
             }
+            case ALLOC_INIT -> {
+                /* Allocate memory from heap initialised with the
+                 * size words below the size on top of the stack,
+                 * the first word being deepest in the stack */
+                int size = pop();
+                if (size < 0) {
+                    throw new PL0_Runtime_Error("allocating a negative number of locations on heap");
+                }
+                if (sp - size < STACK_START) {
+                    throw new PL0_Runtime_Error("stack underflow!");
+                }
+                sp -= size;
+                limit -= size;
+                /* The values popped make room for the record */
+                System.arraycopy(memory, sp, memory, limit, size);
+                push(limit);
+            }
             case LOAD_MULTI -> {
                 /* Load multiple words onto stack
                    from address on second top of stack */
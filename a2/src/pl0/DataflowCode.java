@@ -0,0 +1,62 @@
+package pl0;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import cfg.FrameSimulator;
+import machine.Instruction;
+import machine.Operation;
+import tree.Code;
+
+/**
+ * class DataflowCode - helpers for building code by hand for the tests
+ * of the dataflow analyses, accessing the locals x and y of the frame.
+ */
+final class DataflowCode {
+
+    /* Slots of the locals x and y */
+    static final int X = FrameSimulator.LOCALS_BASE;
+    static final int Y = FrameSimulator.LOCALS_BASE + 1;
+
+    private DataflowCode() {
+    }
+
+    /**
+     * Generate code to store a constant value in the slot.
+     *
+     * @return the STORE_FRAME instruction
+     */
+    static Instruction store(Code code, int slot, int value) {
+        code.genLoadConstant(value);
+        code.genLoadConstant(slot);
+        code.generateOp(Operation.STORE_FRAME);
+        return last(code);
+    }
+
+    /**
+     * Generate code to load the value of the slot.
+     *
+     * @return the LOAD_FRAME instruction
+     */
+    static Instruction load(Code code, int slot) {
+        code.genLoadConstant(slot);
+        code.generateOp(Operation.LOAD_FRAME);
+        return last(code);
+    }
+
+    /**
+     * @return the instructions as text, for comparison
+     */
+    static List<String> listing(List<Instruction> instructions) {
+        List<String> listing = new ArrayList<>();
+        for (Instruction inst : instructions) {
+            listing.add(inst.toString());
+        }
+        return listing;
+    }
+
+    private static Instruction last(Code code) {
+        List<Instruction> instructions = code.getInstructionList();
+        return instructions.get(instructions.size() - 1);
+    }
+}
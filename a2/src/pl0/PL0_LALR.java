@@ -1,14 +1,18 @@
 package pl0;
 
 import java_cup.runtime.ComplexSymbolFactory;
+import machine.BranchProfile;
 import machine.StackMachine;
 import parse.CUPParser;
 import source.Errors;
 import source.Source;
 import tree.CodeGenerator;
 import tree.DeclNode;
+import tree.Optimisation;
 import tree.Procedures;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
 
@@ -30,6 +34,13 @@ public class PL0_LALR extends Runner {
         configurations.put('v', new Option("output of generated code", false));
         configurations.put('g', new Option("turn code generation off", false));
         configurations.put('e', new Option("turn stack machine execution off", false));
+        configurations.put('i', new Option("-i<n> inline procedures of at most n words (-i0 turns inlining off)", false));
+        configurations.put('p', new Option("-p<file> record the branch profile of the run in file", false));
+        configurations.put('u', new Option("-u<file> use the branch profile in file to lay out the code", false));
+        configurations.put('O', new Option("-O<n> optimisation level 0, 1 or 2 (default 2)", false));
+        configurations.put('c', new Option("check the generated code after each pass", false));
+        configurations.put('k', new Option("-k<dir> reuse the code of unchanged procedures cached in dir", false));
+        configurations.put('S', new Option("output the time taken by and effect of each optimisation pass", false));
     }
 
     @Override
@@ -69,9 +80,44 @@ public class PL0_LALR extends Runner {
      * Compile the abstract syntax tree into procedures to execute
      * in the stack machine
      */
-    private Procedures compile(DeclNode.ProcedureNode tree, Errors errors) {
+    private Procedures compile(DeclNode.ProcedureNode tree, PrintStream output,
+                               Errors errors) {
         CodeGenerator generator = new CodeGenerator(errors);
-        return generator.generateCode(tree);
+        generator.setOptimisationLevel(getFlagValue('O', Optimisation.MAX_LEVEL));
+        generator.getPassManager().setVerify(isFlagSet('c'));
+        generator.setInlineThreshold(getFlagValue('i',
+                CodeGenerator.DEFAULT_INLINE_THRESHOLD));
+        generator.setProfiling(getFlagString('p') != null);
+        String profileFile = getFlagString('u');
+        if (profileFile != null) {
+            try {
+                generator.setProfile(BranchProfile.load(new File(profileFile)));
+            } catch (IOException e) {
+                output.println("Unable to read branch profile " + profileFile +
+                        ": " + e.getMessage());
+            }
+        }
+        String cacheDirectory = getFlagString('k');
+        if (cacheDirectory != null) {
+            generator.setCacheDirectory(new File(cacheDirectory));
+        }
+        Procedures code = generator.generateCode(tree);
+        if (isFlagSet('S')) {
+            generator.getPassManager().printStatistics(output);
+        }
+        if (isFlagSet('v')) {
+            output.println("Bounds checks removed: " +
+                    generator.getBoundsChecksRemoved());
+            output.println("Nil checks removed: " +
+                    generator.getNilChecksRemoved());
+            output.println("Records allocated on the stack: " +
+                    generator.getStackAllocations());
+            output.println("Procedures reused from the cache: " +
+                    generator.getCachedProcedures());
+            output.println("Evaluated at compile time: " +
+                    generator.isEvaluated());
+        }
+        return code;
     }
 
     @Override
@@ -83,7 +129,7 @@ public class PL0_LALR extends Runner {
         }
 
         /* Compile syntax tree to code */
-        Procedures code = compile(tree, errors);
+        Procedures code = compile(tree, output, errors);
         output.println("Code generation complete");
 
         if (code != null) { /* run it if possible */
@@ -99,7 +145,20 @@ public class PL0_LALR extends Runner {
             output.println("Running ...");
             machine.setTracing(isFlagSet('t') ? StackMachine.TRACE_ALL
                     : StackMachine.TRACE_NONE);
+            String profileFile = getFlagString('p');
+            BranchProfile profile = new BranchProfile();
+            if (profileFile != null) {
+                machine.setProfile(profile);
+            }
             machine.run();
+            if (profileFile != null) {
+                try {
+                    profile.save(new File(profileFile));
+                } catch (IOException e) {
+                    output.println("Unable to write branch profile " + profileFile +
+                            ": " + e.getMessage());
+                }
+            }
 
             return true;
         }
@@ -43,6 +43,51 @@ public abstract class Runner {
         }
     }
 
+    /**
+     * Set the value given with a configuration flag, e.g. "40" for "-i40".
+     * If the flag does not already exist, no change will be made.
+     *
+     * @param flagCode Character representing the configuration.
+     * @param value    Value for this configuration.
+     */
+    private void setFlagValue(Character flagCode, String value) {
+        if (configurations.containsKey(flagCode)) {
+            configurations.get(flagCode).setValue(value);
+        }
+    }
+
+    /**
+     * Query the integer value given with a configuration flag.
+     *
+     * @param flagCode     Character representing the configuration.
+     * @param defaultValue Value returned if the flag was not given a value
+     *                     or the value given is not an integer.
+     * @return The value given with the flag, otherwise defaultValue.
+     */
+    int getFlagValue(Character flagCode, int defaultValue) {
+        Option option = configurations.get(flagCode);
+        if (option == null || option.getValue() == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(option.getValue());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Query the value given with a configuration flag.
+     *
+     * @param flagCode Character representing the configuration.
+     * @return The value given with the flag, or null if the flag was not
+     * given a value.
+     */
+    String getFlagString(Character flagCode) {
+        Option option = configurations.get(flagCode);
+        return option == null ? null : option.getValue();
+    }
+
     /**
      * Query if a configuration flag is set.
      *
@@ -210,6 +255,10 @@ public abstract class Runner {
                 if (configurations.containsKey(flag)) {
                     /* Set the flag to the opposite of flag default */
                     setFlag(flag, true);
+                    if (arg.length() > 2) {
+                        /* Value given directly after the flag, e.g. -i40 */
+                        setFlagValue(flag, arg.substring(2));
+                    }
                 } else {
                     /* Unknown flag given */
                     outStream.println("Unknown flag: " + flag);
@@ -255,6 +304,10 @@ class Option {
      * Whether or not the option has been set
      */
     private boolean set;
+    /**
+     * Value given with the option, or null if none was given
+     */
+    private String value;
 
     /**
      * Construct a new option.
@@ -287,4 +340,18 @@ class Option {
     public void set(boolean set) {
         this.set = set;
     }
+
+    /**
+     * @return The value given with the option, or null if none was given
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * Set the value given with the option
+     */
+    public void setValue(String value) {
+        this.value = value;
+    }
 }
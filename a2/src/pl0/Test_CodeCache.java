@@ -0,0 +1,69 @@
+package pl0;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test that code reused from the cache of procedures (-k) is regenerated
+ * when a declaration it depends on is edited between compilations.
+ */
+public class Test_CodeCache {
+
+    /**
+     * Program whose procedure p writes the field x of a record.
+     * At -O0 p is not inlined, so its code is cached on its own.
+     */
+    private static final String PROGRAM =
+            "type R = record %s end;\n" +
+            "var r: R;\n" +
+            "procedure p() =\n" +
+            "  begin\n" +
+            "    write r.x\n" +
+            "  end;\n" +
+            "begin\n" +
+            "  r := new R(%s);\n" +
+            "  call p()\n" +
+            "end\n";
+
+    /**
+     * @return the output of compiling and running the program with the
+     * arguments
+     */
+    private static String run(File program, String... args) throws IOException {
+        ByteArrayOutputStream outputArray = new ByteArrayOutputStream();
+        PrintStream outputStream = new PrintStream(outputArray, true);
+        String[] arguments = new String[args.length + 1];
+        System.arraycopy(args, 0, arguments, 0, args.length);
+        arguments[args.length] = program.getPath();
+        Runner runner = new PL0_LALR();
+        runner.parseArguments(arguments, "pl0.PL0_LALR", outputStream);
+        runner.run(program.getCanonicalPath(), outputStream);
+        return outputArray.toString().replaceAll("\\r\\n", "\n");
+    }
+
+    /**
+     * Reordering the fields of a record moves them to different offsets,
+     * so the cached code of a procedure accessing them must not be reused
+     */
+    @Test
+    public void reorderedRecordFields() throws Exception {
+        File directory = Files.createTempDirectory("pl0-code-cache").toFile();
+        File program = new File(directory, "record.pl0");
+        String cache = "-k" + new File(directory, "cache").getPath();
+        Files.writeString(program.toPath(), String.format(PROGRAM, "x: int; y: int", "1, 2"));
+        String before = run(program, "-c", "-O0", cache);
+        Files.writeString(program.toPath(), String.format(PROGRAM, "y: int; x: int", "2, 1"));
+        String after = run(program, "-c", "-O0", cache);
+        assertEquals("The output with the edited record is that of the original",
+                before, after);
+        assertEquals("The output with the cache differs from that without",
+                run(program, "-c", "-O0"), after);
+    }
+}
@@ -0,0 +1,87 @@
+package pl0;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import cfg.BasicBlock;
+import cfg.ConstantPropagation;
+import cfg.ControlFlowGraph;
+import machine.Instruction;
+import machine.Operation;
+import tree.Code;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static pl0.DataflowCode.X;
+import static pl0.DataflowCode.Y;
+import static pl0.DataflowCode.listing;
+import static pl0.DataflowCode.load;
+import static pl0.DataflowCode.store;
+
+/**
+ * Test ConstantPropagation on hand-built code.
+ */
+public class Test_ConstantPropagation {
+
+    /**
+     * read; if ... then x, y := 2, 5 else x, y := 3, 5; write x; write y
+     * The branches assign x different constants, so it has no known
+     * value after the if, but y has the same value on both paths.
+     */
+    @Test
+    public void mergeOfDifferingConstants() {
+        ControlFlowGraph cfg = ControlFlowGraph.build(mergeCode());
+        assertEquals(4, cfg.getBlocks().size());
+        BasicBlock thenBlock = cfg.getBlocks().get(1);
+        BasicBlock join = cfg.getBlocks().get(3);
+        ConstantPropagation constants = new ConstantPropagation(cfg);
+        constants.solve();
+
+        assertEquals(Map.of(X, 2, Y, 5), constants.getOut(thenBlock));
+        assertEquals(Map.of(Y, 5), constants.getIn(join));
+        Map<Instruction, Integer> loads = constants.getConstantLoads();
+        List<Instruction> instructions = join.getInstructions();
+        assertFalse(loads.containsKey(instructions.get(1)));
+        assertEquals(Integer.valueOf(5), loads.get(instructions.get(4)));
+    }
+
+    /**
+     * Only the load of y, whose value is the same on both paths, is
+     * replaced by a load of its value
+     */
+    @Test
+    public void constantLoads() {
+        ControlFlowGraph cfg = ControlFlowGraph.build(mergeCode());
+        cfg.propagateConstants();
+        assertEquals(List.of("LOAD_CON(" + X + ")", "LOAD_FRAME", "WRITE",
+                        "LOAD_CON(5)", "WRITE", "RETURN"),
+                listing(cfg.getBlocks().get(3).getInstructions()));
+    }
+
+    /**
+     * @return the code of the program
+     */
+    private static Code mergeCode() {
+        Code code = new Code();
+        Instruction.LabelInstruction elsePart = new Instruction.LabelInstruction("else");
+        Instruction.LabelInstruction end = new Instruction.LabelInstruction("end");
+        code.generateOp(Operation.READ);
+        code.genJumpIfFalse(elsePart);
+        store(code, X, 2);
+        store(code, Y, 5);
+        code.genJumpAlways(end);
+        code.genLabel(elsePart);
+        store(code, X, 3);
+        store(code, Y, 5);
+        code.genLabel(end);
+        load(code, X);
+        code.generateOp(Operation.WRITE);
+        load(code, Y);
+        code.generateOp(Operation.WRITE);
+        code.generateOp(Operation.RETURN);
+        code.resolveLabels();
+        return code;
+    }
+}
@@ -0,0 +1,71 @@
+package pl0;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeFalse;
+
+/**
+ * Differential test that all programs in test-pgm produce the same
+ * output when compiled without optimisation (-O0) and with all
+ * optimisations (-O2), with the generated code checked after each pass.
+ * Programs that run out of memory without optimisation are skipped, as
+ * tail calls and stack allocation of records legitimately let them run.
+ */
+@RunWith(Parameterized.class)
+public class Test_Differential {
+
+    /**
+     * PL0 source code currently being tested
+     **/
+    private final File program;
+
+    /**
+     * Construct a new parameterized test instance
+     *
+     * @param program PL0 source code currently being tested
+     */
+    public Test_Differential(File program) {
+        this.program = program;
+    }
+
+    /**
+     * @return List all the of programs in the test folder
+     */
+    @Parameterized.Parameters(name = "{0}")
+    public static List<File> testPrograms() {
+        return TestRunner.testPrograms();
+    }
+
+    /**
+     * @return the output of compiling and running the program
+     * at the optimisation level
+     */
+    private String run(int level) throws IOException {
+        ByteArrayOutputStream outputArray = new ByteArrayOutputStream();
+        PrintStream outputStream = new PrintStream(outputArray, true);
+        Runner runner = new PL0_LALR();
+        runner.parseArguments(new String[]{"-c", "-O" + level, program.getPath()},
+                "pl0.PL0_LALR", outputStream);
+        runner.run(program.getCanonicalPath(), outputStream);
+        return outputArray.toString().replaceAll("\\r\\n", "\n");
+    }
+
+    /**
+     * Compare the output at -O0 with that at -O2
+     */
+    @Test
+    public void test() throws Exception {
+        String unoptimised = run(0);
+        assumeFalse(unoptimised.contains("memory overflow"));
+        assertEquals("The outputs at -O0 and -O2 do not match", unoptimised, run(2));
+    }
+}
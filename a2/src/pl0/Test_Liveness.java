@@ -0,0 +1,102 @@
+package pl0;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import cfg.BasicBlock;
+import cfg.ControlFlowGraph;
+import cfg.FrameSimulator;
+import cfg.Liveness;
+import machine.Instruction;
+import machine.Operation;
+import tree.Code;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static pl0.DataflowCode.X;
+import static pl0.DataflowCode.Y;
+import static pl0.DataflowCode.listing;
+import static pl0.DataflowCode.load;
+import static pl0.DataflowCode.store;
+
+/**
+ * Test Liveness on hand-built code.
+ */
+public class Test_Liveness {
+
+    /**
+     * x := 10; y := 5; while 0 < x do x := x - 1
+     * x is read around the loop, so it is live at the end of the loop
+     * body as well as before the loop, but y is never read.
+     */
+    @Test
+    public void loop() {
+        Code code = new Code();
+        Instruction.LabelInstruction top = new Instruction.LabelInstruction("top");
+        Instruction.LabelInstruction exit = new Instruction.LabelInstruction("exit");
+        store(code, X, 10);
+        store(code, Y, 5);
+        code.genLabel(top);
+        code.generateOp(Operation.ZERO);
+        load(code, X);
+        code.generateOp(Operation.LESS);
+        code.genJumpIfFalse(exit);
+        load(code, X);
+        code.generateOp(Operation.ONE);
+        code.generateOp(Operation.SUB);
+        code.genLoadConstant(X);
+        code.generateOp(Operation.STORE_FRAME);
+        code.genJumpAlways(top);
+        code.genLabel(exit);
+        code.generateOp(Operation.RETURN);
+        code.resolveLabels();
+
+        ControlFlowGraph cfg = ControlFlowGraph.build(code);
+        assertEquals(4, cfg.getBlocks().size());
+        BasicBlock entry = cfg.getBlocks().get(0);
+        BasicBlock test = cfg.getBlocks().get(1);
+        BasicBlock body = cfg.getBlocks().get(2);
+        BasicBlock end = cfg.getBlocks().get(3);
+        Liveness liveness = new Liveness(cfg);
+        liveness.solve();
+
+        assertTrue(liveness.isLiveOut(entry, X));
+        assertFalse(liveness.isLiveOut(entry, Y));
+        /* Live around the back edge of the loop */
+        assertTrue(liveness.isLiveOut(body, X));
+        assertTrue(liveness.getIn(test).get(X));
+        /* Only the links of the frame are live on exit */
+        assertFalse(liveness.getIn(end).get(X));
+        assertTrue(liveness.getIn(end).get(0));
+        assertEquals(FrameSimulator.LOCALS_BASE, liveness.getIn(end).cardinality());
+    }
+
+    /**
+     * x := 1; x := read; write x; y := read
+     * The first store to x is overwritten before it is read, so it is
+     * removed along with its constant value, and y is never read, so
+     * the value read is popped rather than stored.
+     */
+    @Test
+    public void deadStores() {
+        Code code = new Code();
+        store(code, X, 1);
+        code.generateOp(Operation.READ);
+        code.genLoadConstant(X);
+        code.generateOp(Operation.STORE_FRAME);
+        load(code, X);
+        code.generateOp(Operation.WRITE);
+        code.generateOp(Operation.READ);
+        code.genLoadConstant(Y);
+        code.generateOp(Operation.STORE_FRAME);
+        code.generateOp(Operation.RETURN);
+
+        ControlFlowGraph cfg = ControlFlowGraph.build(code);
+        cfg.removeDeadStores();
+        assertEquals(List.of("READ", "LOAD_CON(" + X + ")", "STORE_FRAME",
+                        "LOAD_CON(" + X + ")", "LOAD_FRAME", "WRITE", "READ", "POP", "RETURN"),
+                listing(cfg.lower().getInstructionList()));
+    }
+}
@@ -1,9 +1,10 @@
 package tree;
 
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Map;
 
-import machine.StackMachine;
 import machine.Instruction;
 import machine.Operation;
 import syms.SymEntry;
@@ -52,6 +53,16 @@ public class Code {
         size += newCode.size();
     }
 
+    /**
+     * Append a single existing instruction to this code sequence.
+     *
+     * @param instruction to be appended
+     */
+    public void appendInstruction(Instruction instruction) {
+        code.add(instruction);
+        size += instruction.getSize();
+    }
+
     /**
      * Generate instruction and append to code sequence.
      *
@@ -85,6 +96,25 @@ public class Code {
         return position;
     }
 
+    /**
+     * Generate a profile point identifying the conditional branch that
+     * is to follow.
+     */
+    public void genProfilePoint(String key) {
+        code.add(new Instruction.ProfilePointInstruction(key));
+    }
+
+    /**
+     * Generate an ADD_CON instruction to add a constant to the value
+     * on top of the stack. Nothing is generated to add zero.
+     */
+    public void genAddConstant(int value) {
+        if (value != 0) {
+            code.add(new Instruction.OperandInstruction(Operation.ADD_CON, value));
+            size += Operation.ADD_CON.getSize();
+        }
+    }
+
     /**
      * Update the LOAD_CON instruction at index position to load
      * the new value.
@@ -109,12 +139,12 @@ public class Code {
     /**
      * Generate code to perform a logical negation.
      * False is represented by 0 and true by 1.
-     * Using a bitwise not operation does not give the correct result.
+     * Using a bitwise not operation does not give the correct result,
+     * but an exclusive or with 1 does.
      */
     public void genBoolNot() {
-        generateOp(Operation.NEGATE);
         generateOp(Operation.ONE);
-        generateOp(Operation.ADD);
+        generateOp(Operation.XOR);
     }
 
     /**
@@ -262,41 +292,97 @@ public class Code {
     }
 
     /**
-     * Generate a bounds check instruction.
+     * Generate a label at the current position in the code.
+     * A label does not change the size of the code.
+     */
+    public void genLabel(Instruction.LabelInstruction label) {
+        code.add(label);
+    }
+
+    /**
+     * Generate an unconditional branch to a label. The branch offset is
+     * filled in by resolveLabels once the code containing both the
+     * branch and the label has been assembled.
+     */
+    public void genJumpAlways(Instruction.LabelInstruction label) {
+        genBranch(Operation.BR, label);
+    }
+
+    /**
+     * Generate a JumpIf False to a label, resolved by resolveLabels.
+     */
+    public void genJumpIfFalse(Instruction.LabelInstruction label) {
+        genBranch(Operation.BR_FALSE, label);
+    }
+
+    /**
+     * Generate a JumpIf True to a label, resolved by resolveLabels.
+     */
+    public void genJumpIfTrue(Instruction.LabelInstruction label) {
+        genBranch(Operation.BR_TRUE, label);
+    }
+
+    /**
+     * Generate a branch instruction to a label.
+     */
+    private void genBranch(Operation branch, Instruction.LabelInstruction label) {
+        code.add(new Instruction.LabelRefInstruction(label));
+        size += Operation.LOAD_CON.getSize();
+        generateOp(branch);
+    }
+
+    /**
+     * Fill in the offsets of branches to labels within this code sequence.
+     * As for other branches, the offset is relative to the address of
+     * the instruction following the branch instruction.
+     */
+    public void resolveLabels() {
+        Map<Instruction.LabelInstruction, Integer> labels = new IdentityHashMap<>();
+        int address = 0;
+        for (Instruction inst : code) {
+            if (inst instanceof Instruction.LabelInstruction label) {
+                labels.put(label, address);
+            }
+            address += inst.getSize();
+        }
+        address = 0;
+        for (Instruction inst : code) {
+            address += inst.getSize();
+            if (inst instanceof Instruction.LabelRefInstruction ref) {
+                Integer target = labels.get(ref.getLabel());
+                if (target == null) {
+                    throw new Error("Code branch to undefined label " +
+                            ref.getLabel().getName());
+                }
+                /* Branch instructions follow their offset */
+                ref.setValue(target - (address + Operation.BR.getSize()));
+            }
+        }
+    }
+
+    /**
+     * Generate a bounds check instruction with constant bounds.
      * Assumes the value to check is already on the stack.
      * If the bounds check succeeds the value checked is left
-     * on the top of stack, otherwise the machine halts
-     * with an OUT_OF_BOUNDS runtime error.
+     * on the top of stack, otherwise the CHECK_BOUNDS_CON instruction
+     * halts the machine with an "expression out of bounds" error.
      */
     public void genBoundsCheck(int lower, int upper) {
-        Code condCode = new Code();
-        condCode.generateOp(Operation.DUP);
-        condCode.genLoadConstant(lower);
-        condCode.genLoadConstant(upper);
-        condCode.generateOp(Operation.BOUND);
-        Code stopCode = new Code();
-        stopCode.genLoadConstant(StackMachine.OUT_OF_BOUNDS);
-        stopCode.generateOp(Operation.STOP);
-        genIfThenElse(condCode, new Code(), stopCode);
+        code.add(new Instruction.CheckBoundsInstruction(lower, upper));
+        size += Operation.CHECK_BOUNDS_CON.getSize();
     }
 
     /**
      * Generate a bounds check instruction.
      * Assumes the value to check is already on the stack.
      * If the bounds check succeeds the value checked is left
-     * on the top of stack, otherwise the machine halts
-     * with an OUT_OF_BOUNDS runtime error.
+     * on the top of stack, otherwise the CHECK_BOUNDS instruction
+     * halts the machine with an "expression out of bounds" error.
      */
     public void genBoundsCheck(Code lowerCode, Code upperCode) {
-        Code condCode = new Code();
-        condCode.generateOp(Operation.DUP);
-        condCode.append(lowerCode);
-        condCode.append(upperCode);
-        condCode.generateOp(Operation.BOUND);
-        Code stopCode = new Code();
-        stopCode.genLoadConstant(StackMachine.OUT_OF_BOUNDS);
-        stopCode.generateOp(Operation.STOP);
-        genIfThenElse(condCode, new Code(), stopCode);
+        append(lowerCode);
+        append(upperCode);
+        generateOp(Operation.CHECK_BOUNDS);
     }
 
     /**
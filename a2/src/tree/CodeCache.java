@@ -0,0 +1,364 @@
+package tree;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+import machine.Instruction;
+import machine.Operation;
+import syms.SymEntry;
+import syms.Type;
+
+/**
+ * class CodeCache - an on-disk cache of the code generated for each
+ * procedure, so that recompiling a program after editing some of its
+ * procedures only regenerates the code of those procedures.
+ * The code of a procedure is indexed by a fingerprint (a SHA-256 hash) of
+ * everything it depends on: the checked tree of the procedure's body,
+ * the levels, offsets and types of the variables it references, with
+ * the layout of the fields of any record types among them, the
+ * space allocated for its locals before any is added for inlined
+ * procedures and temporaries, the options of the code generator, and
+ * the same for each procedure it calls directly or indirectly, because
+ * those may be inlined or have their side effects taken into account.
+ * Source locations are not part of the fingerprint, unless profiling, so
+ * that editing one procedure does not invalidate those following it.
+ * The code is stored as text with a line per instruction. Calls refer to
+ * procedures by their names qualified by those of the procedures
+ * enclosing them, and are linked to the procedure entries of the current
+ * compilation when loaded; branches to labels are stored as their
+ * resolved offsets.
+ */
+class CodeCache {
+    /**
+     * Identifies the format of the cache, included in each fingerprint
+     */
+    private static final String FORMAT = "PL0 code cache 1";
+
+    /**
+     * Directory holding a file per cached procedure
+     */
+    private final File directory;
+
+    /**
+     * Qualified names of the procedures of the program being compiled
+     */
+    private final Map<SymEntry.ProcedureEntry, String> names = new HashMap<>();
+
+    /**
+     * Procedure entries indexed by their qualified names
+     */
+    private final Map<String, SymEntry.ProcedureEntry> entries = new HashMap<>();
+
+    /**
+     * @param directory directory holding the cached code
+     * @param program   main program being compiled
+     */
+    CodeCache(File directory, DeclNode.ProcedureNode program) {
+        this.directory = directory;
+        addNames(program, "");
+    }
+
+    private void addNames(DeclNode.ProcedureNode procedure, String prefix) {
+        String name = prefix + procedure.getProcEntry().getIdent();
+        names.put(procedure.getProcEntry(), name);
+        entries.put(name, procedure.getProcEntry());
+        for (DeclNode decl : procedure.getBlock().getProcedures().getDeclarations()) {
+            addNames((DeclNode.ProcedureNode) decl, name + ".");
+        }
+    }
+
+    /**
+     * @param procedure     procedure whose code is to be generated
+     * @param configuration options of the code generator affecting the code
+     * @param stackRecords  variables whose records are allocated in frames
+     * @param locations     whether the code depends on source locations
+     * @return the fingerprint of the code of the procedure
+     */
+    String fingerprint(SymEntry.ProcedureEntry procedure, String configuration,
+                       Set<SymEntry.VarEntry> stackRecords, boolean locations) {
+        Fingerprint fingerprint = new Fingerprint(stackRecords, locations);
+        fingerprint.append(FORMAT).append(configuration)
+                .append(procedure.getBlock().getBlockLocals().getVariableSpace());
+        fingerprint.add(procedure);
+        while (!fingerprint.pending.isEmpty()) {
+            fingerprint.search(fingerprint.pending.removeFirst());
+        }
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(
+                    fingerprint.text.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new Error("SHA-256 not supported", e);
+        }
+    }
+
+    /**
+     * @return the cached code with the fingerprint, or null if there is
+     * none or it cannot be read
+     */
+    Code load(String fingerprint) {
+        File file = new File(directory, fingerprint);
+        if (!file.isFile()) {
+            return null;
+        }
+        Code code = new Code();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file,
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Instruction inst = parse(line);
+                if (inst == null) {
+                    return null;
+                }
+                code.appendInstruction(inst);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+        return code;
+    }
+
+    /**
+     * Save the code with the fingerprint.
+     *
+     * @throws IOException if the code cannot be written
+     */
+    void store(String fingerprint, Code code) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("cannot create directory " + directory);
+        }
+        /* Written to a temporary file first so that a crash or a
+         * concurrent compilation never leaves a partial file under the
+         * fingerprint */
+        File temp = File.createTempFile(fingerprint, ".tmp", directory);
+        try {
+            try (PrintWriter writer = new PrintWriter(new FileWriter(temp,
+                    StandardCharsets.UTF_8))) {
+                for (Instruction inst : code.getInstructionList()) {
+                    String line = format(inst);
+                    if (line != null) {
+                        writer.println(line);
+                    }
+                }
+                if (writer.checkError()) {
+                    throw new IOException("cannot write " + temp);
+                }
+            }
+            Files.move(temp.toPath(), new File(directory, fingerprint).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            temp.delete();
+        }
+    }
+
+    /**
+     * @return the line representing the instruction, or null if it
+     * need not be stored
+     */
+    private String format(Instruction inst) {
+        if (inst instanceof Instruction.ProfilePointInstruction profilePoint) {
+            return "PROFILE " + escape(profilePoint.getKey());
+        } else if (inst instanceof Instruction.LabelInstruction) {
+            /* Branches to labels are stored as resolved offsets */
+            return null;
+        } else if (inst instanceof Instruction.CommentInstruction) {
+            return "COMMENT " + escape(inst.toString().substring("// ".length()));
+        } else if (inst instanceof Instruction.ProcRefInstruction procRef) {
+            return "PROC " + names.get(procRef.getProcedure());
+        } else if (inst instanceof Instruction.OperandInstruction operand) {
+            return inst.getOperation().name() + " " + operand.getValue();
+        } else if (inst instanceof Instruction.CheckBoundsInstruction check) {
+            return inst.getOperation().name() + " " + check.getLower() + " " + check.getUpper();
+        } else {
+            return inst.getOperation().name();
+        }
+    }
+
+    /**
+     * @return the instruction represented by the line, or null if it
+     * refers to a procedure not in the program
+     * @throws IllegalArgumentException if the line is malformed
+     */
+    private Instruction parse(String line) {
+        int space = line.indexOf(' ');
+        String kind = space < 0 ? line : line.substring(0, space);
+        String rest = space < 0 ? "" : line.substring(space + 1);
+        switch (kind) {
+            case "PROFILE":
+                return new Instruction.ProfilePointInstruction(unescape(rest));
+            case "COMMENT":
+                return new Instruction.CommentInstruction(unescape(rest));
+            case "PROC":
+                SymEntry.ProcedureEntry proc = entries.get(rest);
+                return proc == null ? null : new Instruction.ProcRefInstruction(proc);
+            default:
+                Operation op = Operation.valueOf(kind);
+                if (op.getSize() == 1) {
+                    return new Instruction(op);
+                } else if (op == Operation.CHECK_BOUNDS_CON) {
+                    String[] bounds = rest.split(" ");
+                    if (bounds.length != 2) {
+                        throw new IllegalArgumentException("Malformed bounds: " + rest);
+                    }
+                    return new Instruction.CheckBoundsInstruction(
+                            Integer.parseInt(bounds[0]), Integer.parseInt(bounds[1]));
+                }
+                int value = Integer.parseInt(rest);
+                return op == Operation.LOAD_CON ?
+                        new Instruction.LoadConInstruction(value) :
+                        new Instruction.OperandInstruction(op, value);
+        }
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+
+    private static String unescape(String s) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\' && i + 1 < s.length()) {
+                c = s.charAt(++i) == 'n' ? '\n' : s.charAt(i);
+            }
+            result.append(c);
+        }
+        return result.toString();
+    }
+
+    /**
+     * The text from which a fingerprint is computed, built by a search of
+     * a procedure and the procedures it calls.
+     */
+    private class Fingerprint {
+        final StringBuilder text = new StringBuilder();
+        final Set<SymEntry.VarEntry> stackRecords;
+        final boolean locations;
+        final Set<SymEntry.ProcedureEntry> visited = new HashSet<>();
+        final Deque<SymEntry.ProcedureEntry> pending = new ArrayDeque<>();
+        /* Record types described so far, numbered in order */
+        final Map<Type.RecordType, Integer> records = new HashMap<>();
+
+        Fingerprint(Set<SymEntry.VarEntry> stackRecords, boolean locations) {
+            this.stackRecords = stackRecords;
+            this.locations = locations;
+        }
+
+        Fingerprint append(Object item) {
+            text.append(item).append(' ');
+            return this;
+        }
+
+        void add(SymEntry.ProcedureEntry procedure) {
+            if (visited.add(procedure)) {
+                pending.add(procedure);
+            }
+        }
+
+        void search(SymEntry.ProcedureEntry procedure) {
+            append("PROCEDURE").append(names.get(procedure)).append(procedure.getLevel());
+            search(procedure.getBlock().getBody());
+        }
+
+        void search(StatementNode statement) {
+            append(statement.getClass().getSimpleName());
+            if (locations) {
+                append(statement.getLocation());
+            }
+            if (statement instanceof StatementNode.AssignmentNode assignment) {
+                search(assignment.getLValue());
+                search(assignment.getExp());
+            } else if (statement instanceof StatementNode.ReadNode read) {
+                search(read.getLValue());
+            } else if (statement instanceof StatementNode.WriteNode write) {
+                search(write.getExp());
+            } else if (statement instanceof StatementNode.CallNode call) {
+                append(names.get(call.getEntry()));
+                add(call.getEntry());
+            } else if (statement instanceof StatementNode.ListNode list) {
+                append(list.getStatements().size());
+                for (StatementNode s : list.getStatements()) {
+                    search(s);
+                }
+            } else if (statement instanceof StatementNode.IfNode ifNode) {
+                search(ifNode.getCondition());
+                search(ifNode.getThenStmt());
+                search(ifNode.getElseStmt());
+            } else if (statement instanceof StatementNode.WhileNode whileNode) {
+                search(whileNode.getCondition());
+                search(whileNode.getLoopStmt());
+            }
+        }
+
+        void search(ExpNode exp) {
+            Type type = exp.getType();
+            append(exp.getClass().getSimpleName());
+            appendType(type);
+            append(type.getSpace());
+            if (exp instanceof ExpNode.ConstNode constant) {
+                append(constant.getValue());
+            } else if (exp instanceof ExpNode.VariableNode variable) {
+                SymEntry.VarEntry var = variable.getVariable();
+                append(var.getIdent()).append(var.getLevel()).append(var.getOffset())
+                        .append(stackRecords.contains(var));
+            } else if (exp instanceof ExpNode.DereferenceNode deref) {
+                search(deref.getLeftValue());
+            } else if (exp instanceof ExpNode.FieldAccessNode fieldAccess) {
+                append(fieldAccess.getFieldName());
+                search(fieldAccess.getRecord());
+            } else if (exp instanceof ExpNode.BinaryNode binary) {
+                append(binary.getOp());
+                search(binary.getLeft());
+                search(binary.getRight());
+            } else if (exp instanceof ExpNode.UnaryNode unary) {
+                append(unary.getOp());
+                search(unary.getArg());
+            } else if (exp instanceof ExpNode.NarrowSubrangeNode narrow) {
+                search(narrow.getExp());
+            } else if (exp instanceof ExpNode.WidenSubrangeNode widen) {
+                search(widen.getExp());
+            } else if (exp instanceof ExpNode.NewRecordNode newRecord) {
+                append(newRecord.getExpressions().size());
+                for (ExpNode e : newRecord.getExpressions()) {
+                    search(e);
+                }
+            }
+        }
+
+        /**
+         * Append the structure of the type. Type names alone would not
+         * change when, for example, the fields of a named record type are
+         * reordered, moving them to different offsets.
+         */
+        void appendType(Type type) {
+            if (type instanceof Type.RecordType record) {
+                Integer number = records.get(record);
+                if (number != null) {
+                    /* A record type may refer to itself through its fields */
+                    append("RECORD#" + number);
+                    return;
+                }
+                records.put(record, records.size());
+                append("RECORD");
+                for (Type.Field field : record.getFieldList()) {
+                    append(field.getId()).append(field.getOffset());
+                    appendType(field.getType());
+                }
+                append("END");
+            } else if (type instanceof Type.ReferenceType reference) {
+                append("ref");
+                appendType(reference.getBaseType());
+            } else if (type instanceof Type.SubrangeType subrange) {
+                append("subrange").append(subrange.getLower()).append(subrange.getUpper());
+                appendType(subrange.getBaseType());
+            } else {
+                append(type);
+            }
+        }
+    }
+}
@@ -1,12 +1,18 @@
 package tree;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
 
+import cfg.ControlFlowGraph;
+import machine.BranchProfile;
+import machine.Instruction;
 import machine.Operation;
 import machine.StackMachine;
 import source.Errors;
 import source.VisitorDebugger;
 import syms.Predefined;
+import syms.Scope;
 import syms.SymEntry;
 import syms.Type;
 import tree.StatementNode.*;
@@ -17,6 +23,32 @@ import tree.StatementNode.*;
  */
 public class CodeGenerator implements DeclVisitor, StatementTransform<Code>,
         ExpTransform<Code> {
+    /**
+     * Default maximum size (in words) of the body of a procedure
+     * that is inlined at its call sites.
+     */
+    public static final int DEFAULT_INLINE_THRESHOLD = 32;
+
+    /**
+     * Code executed in at most one in COLD_RATIO evaluations of the
+     * condition guarding it, according to a branch profile, is placed
+     * out of the way of the frequently executed code.
+     */
+    public static final int COLD_RATIO = 10;
+
+    /*
+     * Names of the passes and steps of generation reported by the
+     * pass manager
+     */
+    private static final String ESCAPE_ANALYSIS = "escape analysis";
+    private static final String FOLD_CONSTANTS = "fold constants";
+    private static final String REMOVE_BOUNDS_CHECKS = "remove bounds checks";
+    private static final String REMOVE_NIL_CHECKS = "remove nil checks";
+    private static final String INLINE_CALLS = "inline calls";
+    private static final String TAIL_CALLS = "tail calls";
+    private static final String HOIST_INVARIANTS = "hoist loop invariants";
+    private static final String PARTIAL_EVALUATION = "partial evaluation";
+
     /**
      * Current static level of nesting into procedures.
      */
@@ -25,7 +57,7 @@ public class CodeGenerator implements DeclVisitor, StatementTransform<Code>,
     /**
      * Table of code for each procedure
      */
-    private final Procedures procedures;
+    private Procedures procedures;
 
     /**
      * Error message handler
@@ -37,12 +69,352 @@ public class CodeGenerator implements DeclVisitor, StatementTransform<Code>,
      */
     private final VisitorDebugger debug;
 
+    /**
+     * Maximum size (in words) of the body of a procedure that is inlined
+     * at its call sites. Zero turns inlining off.
+     */
+    private int inlineThreshold = 0;
+
+    /**
+     * Procedure whose code is currently being generated.
+     */
+    private SymEntry.ProcedureEntry currentProcedure;
+
+    /**
+     * Whether the statement being generated is in tail position within
+     * the current procedure, i.e. only the procedure's RETURN follows it.
+     */
+    private boolean tailPosition = false;
+
+    /**
+     * Label of the code that reuses the current procedure's frame for
+     * a self-recursive tail call.
+     */
+    private Instruction.LabelInstruction tailCallLabel;
+
+    /**
+     * Whether a tail call to the current procedure has been generated.
+     */
+    private boolean tailCallGenerated;
+
+    /**
+     * Scope of the frame for which code is currently being generated.
+     * The locals of inlined procedures are allocated within it.
+     */
+    private Scope frameScope;
+
+    /**
+     * Offsets within the current frame of the locals of
+     * procedures that have been inlined into it.
+     */
+    private Map<SymEntry.VarEntry, Integer> inlinedLocals = new HashMap<>();
+
+    /**
+     * Temporaries of the current frame that are free for reuse.
+     */
+    private List<Integer> freeTemps = new ArrayList<>();
+
+    /**
+     * Loop-invariant expressions hoisted out of the enclosing while loops,
+     * with the temporary in the current frame holding each value.
+     */
+    private final Map<ExpNode, Integer> hoisted = new IdentityHashMap<>();
+
+    /**
+     * Variables holding record pointers known not to be nil at the current
+     * point of the code, because they were just assigned a new record or
+     * have been checked by a field access and not modified since.
+     */
+    private Set<SymEntry.VarEntry> nonNil = new HashSet<>();
+
+    /**
+     * Number of nil checks omitted because the record pointer is known
+     * not to be nil.
+     */
+    private int nilChecksRemoved = 0;
+
+    /**
+     * Variables whose records do not escape the activation of the
+     * procedure declaring them, so may be allocated in its frame
+     */
+    private Set<SymEntry.VarEntry> stackRecords = new HashSet<>();
+
+    /**
+     * Number of record allocations in stack frames rather than the heap
+     */
+    private int stackAllocations = 0;
+
+    /**
+     * Number of expressions evaluated at compile time
+     */
+    private int constantsFolded = 0;
+
+    /**
+     * Number of calls replaced by the body of the procedure called
+     */
+    private int callsInlined = 0;
+
+    /**
+     * Number of self-recursive tail calls reusing the frame
+     */
+    private int tailCalls = 0;
+
+    /**
+     * Number of loop-invariant expressions hoisted out of loops
+     */
+    private int invariantsHoisted = 0;
+
+    /**
+     * True iff the program was evaluated at compile time
+     */
+    private boolean evaluated = false;
+
+    /**
+     * Directory of the cache of the code of procedures, null if the
+     * code is not cached
+     */
+    private File cacheDirectory = null;
+
+    /**
+     * Cache of the code of procedures of the program being compiled
+     */
+    private CodeCache codeCache = null;
+
+    /**
+     * Number of procedures whose code was reused from the cache
+     */
+    private int cachedProcedures = 0;
+
+    /**
+     * Optimisations performed
+     */
+    private EnumSet<Optimisation> optimisations =
+            Optimisation.forLevel(Optimisation.MAX_LEVEL);
+
+    /**
+     * Passes run over the code of each procedure once generated
+     */
+    private PassManager passManager;
+
+    /**
+     * Whether to mark the conditions of if statements and while loops
+     * with profile points, so that a run can record a branch profile
+     */
+    private boolean profiling = false;
+
+    /**
+     * Branch profile of an earlier run used to lay out the code,
+     * or null if there is none
+     */
+    private BranchProfile profile = null;
+
+    /**
+     * Code placed after the end of the current procedure, out of the way
+     * of the frequently executed code: rarely executed branches of if
+     * statements and the code to stop on an error.
+     */
+    private Code coldCode = new Code();
+
+    /**
+     * Number of bounds checks omitted because the value checked
+     * is known to be within the subrange.
+     */
+    private int boundsChecksRemoved = 0;
+
+    /**
+     * Procedures currently being inlined, innermost first.
+     */
+    private final Deque<SymEntry.ProcedureEntry> inlineStack = new ArrayDeque<>();
+
+    /**
+     * Size (in words) of the code for the body of each procedure
+     * considered for inlining.
+     */
+    private final Map<SymEntry.ProcedureEntry, Integer> bodySizes = new HashMap<>();
+
 
     public CodeGenerator(Errors errors) {
         super();
         this.errors = errors;
         debug = new VisitorDebugger("generating", errors);
         procedures = new Procedures();
+        passManager = createPassManager();
+    }
+
+    /**
+     * Set the optimisations performed to those of the optimisation level.
+     */
+    public void setOptimisationLevel(int level) {
+        optimisations = Optimisation.forLevel(level);
+        passManager = createPassManager();
+    }
+
+    /**
+     * @return the pass manager running the passes over the generated code
+     */
+    public PassManager getPassManager() {
+        return passManager;
+    }
+
+    /**
+     * @return a pass manager with the passes for the optimisations
+     */
+    private PassManager createPassManager() {
+        PassManager passes = new PassManager();
+        if (optimisations.contains(Optimisation.ESCAPE_ANALYSIS)) {
+            passes.addTreePass(ESCAPE_ANALYSIS,
+                    tree -> stackRecords = EscapeAnalysis.confined(tree));
+        }
+        /* The optimisations made while walking the tree */
+        if (optimisations.contains(Optimisation.INSTRUCTION_SELECTION)) {
+            passes.addStep(FOLD_CONSTANTS, false);
+        }
+        if (optimisations.contains(Optimisation.CHECK_ELIMINATION)) {
+            passes.addStep(REMOVE_BOUNDS_CHECKS, false);
+            passes.addStep(REMOVE_NIL_CHECKS, false);
+        }
+        if (optimisations.contains(Optimisation.INLINING)) {
+            passes.addStep(INLINE_CALLS, false);
+        }
+        if (optimisations.contains(Optimisation.TAIL_CALLS)) {
+            passes.addStep(TAIL_CALLS, false);
+        }
+        if (optimisations.contains(Optimisation.LOOP_INVARIANTS)) {
+            passes.addStep(HOIST_INVARIANTS, true);
+        }
+        if (optimisations.contains(Optimisation.DATAFLOW)) {
+            /* Loads of locals replaced by constants may leave the stores
+             * to them dead */
+            passes.addPass("propagate constants", code -> {
+                ControlFlowGraph cfg = ControlFlowGraph.build(code);
+                cfg.propagateConstants();
+                return cfg.lower();
+            });
+            passes.addPass("remove dead stores", code -> {
+                ControlFlowGraph cfg = ControlFlowGraph.build(code);
+                cfg.removeDeadStores();
+                return cfg.lower();
+            });
+        }
+        if (optimisations.contains(Optimisation.CONTROL_FLOW)) {
+            /* Branches to unconditional branches go directly to the final
+             * destination; branches to the next instruction are removed
+             * whenever the graph is lowered */
+            passes.addPass("thread jumps", code -> {
+                ControlFlowGraph cfg = ControlFlowGraph.build(code);
+                cfg.threadJumps();
+                return cfg.lower();
+            });
+            passes.addPass("remove unreachable code", code -> {
+                ControlFlowGraph cfg = ControlFlowGraph.build(code);
+                cfg.removeUnreachable();
+                return cfg.lower();
+            });
+        }
+        if (optimisations.contains(Optimisation.PARTIAL_EVALUATION)) {
+            passes.addProgramPass(PARTIAL_EVALUATION, this::evaluate);
+        }
+        return passes;
+    }
+
+    /**
+     * Evaluate a program that does not read input at compile time.
+     *
+     * @return the procedures of the residual program, which writes the
+     * output of the program, or null if it cannot be evaluated
+     */
+    private Procedures evaluate(DeclNode.ProcedureNode tree, Procedures code) {
+        if (profiling || errors.hadErrors() || PartialEvaluator.readsInput(tree)) {
+            return null;
+        }
+        Code residual = PartialEvaluator.evaluate(code, errors);
+        if (residual == null) {
+            return null;
+        }
+        Procedures evaluatedCode = new Procedures();
+        evaluatedCode.addProcedure(tree.getProcEntry(), residual);
+        evaluated = true;
+        return evaluatedCode;
+    }
+
+    /**
+     * @return true iff the optimisation is to be performed
+     */
+    private boolean isEnabled(Optimisation optimisation) {
+        return optimisations.contains(optimisation);
+    }
+
+    /**
+     * Set the maximum size (in words) of the body of a procedure
+     * that is inlined at its call sites. Zero turns inlining off.
+     */
+    public void setInlineThreshold(int inlineThreshold) {
+        this.inlineThreshold = inlineThreshold;
+    }
+
+    /**
+     * Set whether the conditions of if statements and while loops are
+     * marked with profile points.
+     */
+    public void setProfiling(boolean profiling) {
+        this.profiling = profiling;
+    }
+
+    /**
+     * Set the branch profile of an earlier run, used to place the
+     * frequently executed code on the fall through path.
+     */
+    public void setProfile(BranchProfile profile) {
+        this.profile = profile;
+    }
+
+    /**
+     * Reuse the code of procedures cached in the directory, and cache
+     * the code of procedures generated. The cache is not used with a
+     * branch profile, as the code would depend on the profile.
+     */
+    public void setCacheDirectory(File cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    /**
+     * @return the number of bounds checks omitted from the generated code
+     * because the value checked is known to be within the subrange.
+     */
+    public int getBoundsChecksRemoved() {
+        return boundsChecksRemoved;
+    }
+
+    /**
+     * @return the number of nil checks omitted from the generated code
+     * because the record pointer is known not to be nil.
+     */
+    public int getNilChecksRemoved() {
+        return nilChecksRemoved;
+    }
+
+    /**
+     * @return the number of record allocations generated in the frame
+     * of a procedure rather than on the heap.
+     */
+    public int getStackAllocations() {
+        return stackAllocations;
+    }
+
+    /**
+     * @return true iff the program was evaluated at compile time and
+     * its code replaced by the writes of its output.
+     */
+    public boolean isEvaluated() {
+        return evaluated;
+    }
+
+    /**
+     * @return the number of procedures whose code was reused from the
+     * code cache rather than generated.
+     */
+    public int getCachedProcedures() {
+        return cachedProcedures;
     }
 
     /**
@@ -52,11 +424,36 @@ public class CodeGenerator implements DeclVisitor, StatementTransform<Code>,
         beginGen("Program");
         staticLevel = node.getBlock().getBlockLocals().getLevel();
         assert staticLevel == 1;  // Main program is at static level 1
+        passManager.runTreePasses(node);
+        if (cacheDirectory != null && profile == null) {
+            codeCache = new CodeCache(cacheDirectory, node);
+        }
+        long start = System.nanoTime();
         visitProcedureNode(node);
+        passManager.recordGeneration(System.nanoTime() - start);
+        recordApplications(Optimisation.ESCAPE_ANALYSIS, ESCAPE_ANALYSIS, stackAllocations);
+        recordApplications(Optimisation.INSTRUCTION_SELECTION, FOLD_CONSTANTS, constantsFolded);
+        recordApplications(Optimisation.CHECK_ELIMINATION, REMOVE_BOUNDS_CHECKS,
+                boundsChecksRemoved);
+        recordApplications(Optimisation.CHECK_ELIMINATION, REMOVE_NIL_CHECKS, nilChecksRemoved);
+        recordApplications(Optimisation.INLINING, INLINE_CALLS, callsInlined);
+        recordApplications(Optimisation.TAIL_CALLS, TAIL_CALLS, tailCalls);
+        recordApplications(Optimisation.LOOP_INVARIANTS, HOIST_INVARIANTS, invariantsHoisted);
+        procedures = passManager.runProgramPasses(node, procedures);
         endGen("Program");
         return procedures;
     }
 
+    /**
+     * Record the number of times an optimisation made while walking
+     * the tree was applied, if it is performed.
+     */
+    private void recordApplications(Optimisation optimisation, String name, int applications) {
+        if (isEnabled(optimisation)) {
+            passManager.recordApplications(name, applications);
+        }
+    }
+
     /* -------------------- Visitor methods ----------------------------*/
 
     /**
@@ -64,9 +461,60 @@ public class CodeGenerator implements DeclVisitor, StatementTransform<Code>,
      */
     public void visitProcedureNode(DeclNode.ProcedureNode node) {
         beginGen("Procedure");
+        String fingerprint = null;
+        if (codeCache != null) {
+            fingerprint = codeCache.fingerprint(node.getProcEntry(),
+                    optimisations + " " + inlineThreshold + " " + profiling,
+                    stackRecords, profiling);
+            Code cached = codeCache.load(fingerprint);
+            if (cached != null) {
+                /* Local procedures are looked up in the cache separately */
+                staticLevel++;
+                node.getBlock().getProcedures().accept(this);
+                staticLevel--;
+                procedures.addProcedure(node.getProcEntry(), cached);
+                cachedProcedures++;
+                endGen("Procedure");
+                return;
+            }
+        }
+        SymEntry.ProcedureEntry savedProcedure = currentProcedure;
+        Instruction.LabelInstruction savedTailCallLabel = tailCallLabel;
+        boolean savedTailCallGenerated = tailCallGenerated;
+        currentProcedure = node.getProcEntry();
+        tailCallLabel = new Instruction.LabelInstruction(
+                "tail call " + currentProcedure.getIdent());
+        tailCallGenerated = false;
+        Code savedColdCode = coldCode;
+        coldCode = new Code();
         // Generate code for the block
         Code code = visitBlockNode(node.getBlock());
-            code.generateOp(Operation.RETURN);
+        code.generateOp(Operation.RETURN);
+        if (tailCallGenerated) {
+            /* A self-recursive tail call discards the locals of the
+             * current activation and restarts the procedure in the same
+             * frame. The static link, dynamic link and return address
+             * are those the new activation would return through anyway.
+             */
+            code.genLabel(tailCallLabel);
+            code.genDeallocStack(node.getBlock().getBlockLocals().getVariableSpace());
+            code.genJumpAlways(-(code.size() + Code.SIZE_JUMP_ALWAYS));
+        }
+        code.append(coldCode);
+        coldCode = savedColdCode;
+        code.resolveLabels();
+        code = passManager.run(currentProcedure.getIdent(), code);
+        if (fingerprint != null) {
+            try {
+                codeCache.store(fingerprint, code);
+            } catch (IOException e) {
+                errors.println("Unable to cache the code of " +
+                        currentProcedure.getIdent() + ": " + e.getMessage());
+            }
+        }
+        currentProcedure = savedProcedure;
+        tailCallLabel = savedTailCallLabel;
+        tailCallGenerated = savedTailCallGenerated;
         procedures.addProcedure(node.getProcEntry(), code);
         //System.out.println(node.getProcEntry().getIdent() + "\n" + code);
         endGen("Procedure");
@@ -77,13 +525,30 @@ public class CodeGenerator implements DeclVisitor, StatementTransform<Code>,
      */
     public Code visitBlockNode(BlockNode node) {
         beginGen("Block");
+        Scope savedScope = frameScope;
+        Map<SymEntry.VarEntry, Integer> savedLocals = inlinedLocals;
+        List<Integer> savedTemps = freeTemps;
+        Set<SymEntry.VarEntry> savedNonNil = nonNil;
+        boolean savedTailPosition = tailPosition;
+        frameScope = node.getBlockLocals();
+        inlinedLocals = new HashMap<>();
+        freeTemps = new ArrayList<>();
+        nonNil = new HashSet<>();
+        /* Generate the code for the body */
+        tailPosition = true;
+        Code bodyCode = node.getBody().genCode(this);
+        tailPosition = savedTailPosition;
+        frameScope = savedScope;
+        inlinedLocals = savedLocals;
+        freeTemps = savedTemps;
+        nonNil = savedNonNil;
         /* Generate code to allocate space for local variables on
-         * procedure entry.
+         * procedure entry. This is done after generating the body
+         * because the locals of inlined procedures are added to the frame.
          */
         Code code = new Code();
         code.genAllocStack(node.getBlockLocals().getVariableSpace());
-        /* Generate the code for the body */
-        code.append(node.getBody().genCode(this));
+        code.append(bodyCode);
         /* Generate code for local procedures.
          * Static level is one greater for the procedures.
          */
@@ -126,11 +591,30 @@ public class CodeGenerator implements DeclVisitor, StatementTransform<Code>,
         Code code = new Code();
         code.genComment("assignment to " + node.getLValue() + ":");
         /* Generate code to evaluate the expression */
-        code.append(node.getExp().genCode(this));
-        /* Generate the code to load the address of the variable */
-        code.append(node.getLValue().genCode(this));
-        /* Generate the store based on the type/size of value */
-        code.genStore(node.getExp().getType());
+        if (node.getExp() instanceof ExpNode.NewRecordNode newRecord &&
+                isStackRecord(node.getLValue(), newRecord)) {
+            code.append(genStackRecord(newRecord));
+        } else {
+            code.append(node.getExp().genCode(this));
+        }
+        if (isFieldWord(node.getLValue())) {
+            /* Store directly into the field of the record */
+            code.append(genFieldOp((ExpNode.FieldAccessNode) node.getLValue(),
+                    Operation.STORE_FIELD));
+        } else {
+            /* Generate the code to load the address of the variable */
+            code.append(node.getLValue().genCode(this));
+            /* Generate the store based on the type/size of value */
+            code.genStore(node.getExp().getType());
+        }
+        if (node.getLValue() instanceof ExpNode.VariableNode variable) {
+            SymEntry.VarEntry var = variable.getVariable();
+            if (isNonNil(node.getExp())) {
+                nonNil.add(var);
+            } else {
+                nonNil.remove(var);
+            }
+        }
         endGen("Assignment");
         return code;
     }
@@ -144,10 +628,19 @@ public class CodeGenerator implements DeclVisitor, StatementTransform<Code>,
         code.genComment("read to " + node.getLValue() + ":");
         /* Read an integer from standard input */
         code.generateOp(Operation.READ);
-        /* Generate the code to load the address of the LValue */
-        code.append(node.getLValue().genCode(this));
-        /* Generate the store based on the type/size of value */
-        code.genStore(node.getLValue().getType().optDereferenceType());
+        if (isFieldWord(node.getLValue())) {
+            /* Store directly into the field of the record */
+            code.append(genFieldOp((ExpNode.FieldAccessNode) node.getLValue(),
+                    Operation.STORE_FIELD));
+        } else {
+            /* Generate the code to load the address of the LValue */
+            code.append(node.getLValue().genCode(this));
+            /* Generate the store based on the type/size of value */
+            code.genStore(node.getLValue().getType().optDereferenceType());
+        }
+        if (node.getLValue() instanceof ExpNode.VariableNode variable) {
+            nonNil.remove(variable.getVariable());
+        }
         endGen("Read");
         return code;
     }
@@ -172,25 +665,149 @@ public class CodeGenerator implements DeclVisitor, StatementTransform<Code>,
         beginGen("Call");
         SymEntry.ProcedureEntry proc = node.getEntry();
         Code code = new Code();
-        code.genComment("call " + proc.getIdent() + ":");
-        /* Generate the call instruction. The second parameter is the
-         * procedure's symbol table entry. The actual address is resolved
-         * at load time.
-         */
-        code.genCall(staticLevel - proc.getLevel(), proc);
+        if (tailPosition && proc == currentProcedure && inlineStack.isEmpty()
+                && isEnabled(Optimisation.TAIL_CALLS)) {
+            code.genComment("tail call " + proc.getIdent() + ":");
+            code.genJumpAlways(tailCallLabel);
+            tailCallGenerated = true;
+            tailCalls++;
+        } else if (isInlinable(proc)) {
+            code.genComment("inline call " + proc.getIdent() + ":");
+            code.append(genInlinedBody(proc));
+            callsInlined++;
+        } else {
+            code.genComment("call " + proc.getIdent() + ":");
+            /* Generate the call instruction. The second parameter is the
+             * procedure's symbol table entry. The actual address is resolved
+             * at load time.
+             */
+            code.genCall(staticLevel - proc.getLevel(), proc);
+            /* The procedure may modify any variable visible to it */
+            nonNil.removeIf(var -> var.getLevel() <= proc.getLevel());
+        }
         endGen("Call");
         return code;
     }
 
+    /**
+     * A procedure may be inlined if it is small, it does not declare
+     * any procedures of its own (so that nothing relies on its frame
+     * existing), and it is not recursive.
+     */
+    private boolean isInlinable(SymEntry.ProcedureEntry proc) {
+        if (!isEnabled(Optimisation.INLINING) || inlineThreshold <= 0
+                || proc == currentProcedure
+                || inlineStack.contains(proc)) {
+            return false;
+        }
+        StatementNode.BlockNode block = proc.getBlock();
+        if (block == null || !block.getProcedures().getDeclarations().isEmpty()) {
+            return false;
+        }
+        return bodySize(proc) <= inlineThreshold;
+    }
+
+    /**
+     * Size (in words) of the code for the body of a procedure when
+     * it is not inlined itself, i.e. generated in its own frame.
+     * Procedures it calls are not inlined for the purposes of sizing.
+     */
+    private int bodySize(SymEntry.ProcedureEntry proc) {
+        Integer size = bodySizes.get(proc);
+        if (size == null) {
+            int savedThreshold = inlineThreshold;
+            int savedLevel = staticLevel;
+            boolean savedTailPosition = tailPosition;
+            Scope savedScope = frameScope;
+            Map<SymEntry.VarEntry, Integer> savedLocals = inlinedLocals;
+            List<Integer> savedTemps = freeTemps;
+            int savedBoundsChecksRemoved = boundsChecksRemoved;
+            int savedNilChecksRemoved = nilChecksRemoved;
+            int savedStackAllocations = stackAllocations;
+            int savedConstantsFolded = constantsFolded;
+            int savedInvariantsHoisted = invariantsHoisted;
+            Set<SymEntry.VarEntry> savedNonNil = nonNil;
+            Code savedColdCode = coldCode;
+            Scope blockLocals = proc.getBlock().getBlockLocals();
+            inlineThreshold = 0;
+            tailPosition = false;
+            staticLevel = blockLocals.getLevel();
+            /* Any frame space allocated while sizing is discarded */
+            frameScope = new Scope(null, blockLocals.getLevel(), proc);
+            inlinedLocals = new HashMap<>();
+            freeTemps = new ArrayList<>();
+            nonNil = new HashSet<>();
+            coldCode = new Code();
+            inlineStack.push(proc);
+            size = proc.getBlock().getBody().genCode(this).size() + coldCode.size();
+            inlineStack.pop();
+            inlineThreshold = savedThreshold;
+            staticLevel = savedLevel;
+            tailPosition = savedTailPosition;
+            frameScope = savedScope;
+            inlinedLocals = savedLocals;
+            freeTemps = savedTemps;
+            boundsChecksRemoved = savedBoundsChecksRemoved;
+            nilChecksRemoved = savedNilChecksRemoved;
+            stackAllocations = savedStackAllocations;
+            constantsFolded = savedConstantsFolded;
+            invariantsHoisted = savedInvariantsHoisted;
+            nonNil = savedNonNil;
+            coldCode = savedColdCode;
+            bodySizes.put(proc, size);
+        }
+        return size;
+    }
+
+    /**
+     * Generate the body of a procedure in place of a call to it.
+     * The locals of the procedure are allocated in the current frame and
+     * references to them are redirected there. References to variables of
+     * enclosing procedures are generated relative to the current static
+     * level, which is at least that of the procedure called.
+     */
+    private Code genInlinedBody(SymEntry.ProcedureEntry proc) {
+        Code code = new Code();
+        for (SymEntry entry : proc.getBlock().getBlockLocals().getEntries()) {
+            if (entry instanceof SymEntry.VarEntry var) {
+                nonNil.remove(var);
+                int space = var.getType().getBaseType().getSpace();
+                Integer offset = inlinedLocals.get(var);
+                if (offset == null) {
+                    offset = frameScope.allocVariableSpace(space);
+                    inlinedLocals.put(var, offset);
+                }
+                /* Initialise the local as ALLOC_STACK would for a call */
+                for (int i = 0; i < space; i++) {
+                    code.genLoadConstant(StackMachine.NULL_ADDR);
+                    code.genLoadConstant(offset + i);
+                    code.generateOp(Operation.STORE_FRAME);
+                }
+            }
+        }
+        boolean savedTailPosition = tailPosition;
+        tailPosition = false;
+        inlineStack.push(proc);
+        code.append(proc.getBlock().getBody().genCode(this));
+        inlineStack.pop();
+        tailPosition = savedTailPosition;
+        return code;
+    }
+
     /**
      * Generate code for a statement list
      */
     public Code visitStatementListNode(StatementNode.ListNode node) {
         beginGen("StatementList");
         Code code = new Code();
-        for (StatementNode s : node.getStatements()) {
-            code.append(s.genCode(this));
+        boolean savedTailPosition = tailPosition;
+        List<StatementNode> statements = node.getStatements();
+        for (int i = 0; i < statements.size(); i++) {
+            /* Only the last statement of a list may be in tail position */
+            tailPosition = savedTailPosition && i == statements.size() - 1;
+            code.append(statements.get(i).genCode(this));
         }
+        tailPosition = savedTailPosition;
         endGen("StatementList");
         return code;
     }
@@ -204,9 +821,39 @@ public class CodeGenerator implements DeclVisitor, StatementTransform<Code>,
         code.genComment("if " + node.getCondition() + ":");
         /* Generate the code for the if-then-else
          * from the code for its components */
-        code.genIfThenElse(node.getCondition().genCode(this),
-                node.getThenStmt().genCode(this),
-                node.getElseStmt().genCode(this));
+        Code condCode = node.getCondition().genCode(this);
+        Set<SymEntry.VarEntry> afterCondition = new HashSet<>(nonNil);
+        Code thenCode = node.getThenStmt().genCode(this);
+        /* Only records known to be non-nil after both branches remain so */
+        Set<SymEntry.VarEntry> afterThen = nonNil;
+        nonNil = afterCondition;
+        Code elseCode = node.getElseStmt().genCode(this);
+        nonNil.retainAll(afterThen);
+        String key = profileKey(node);
+        if (profiling) {
+            condCode.genProfilePoint(key);
+        }
+        if (isRarelyExecuted(key, false) && elseCode.size() != 0) {
+            /* Place the else part after the procedure */
+            Instruction.LabelInstruction elseLabel = new Instruction.LabelInstruction("else");
+            Instruction.LabelInstruction endLabel = new Instruction.LabelInstruction("end if");
+            code.append(condCode);
+            code.genJumpIfFalse(elseLabel);
+            code.append(thenCode);
+            code.genLabel(endLabel);
+            genColdCode(elseLabel, elseCode, endLabel);
+        } else if (isRarelyExecuted(key, true) && thenCode.size() != 0) {
+            /* Place the then part after the procedure */
+            Instruction.LabelInstruction thenLabel = new Instruction.LabelInstruction("then");
+            Instruction.LabelInstruction endLabel = new Instruction.LabelInstruction("end if");
+            code.append(condCode);
+            code.genJumpIfTrue(thenLabel);
+            code.append(elseCode);
+            code.genLabel(endLabel);
+            genColdCode(thenLabel, thenCode, endLabel);
+        } else {
+            code.genIfThenElse(condCode, thenCode, elseCode);
+        }
         endGen("If");
         return code;
     }
@@ -218,25 +865,207 @@ public class CodeGenerator implements DeclVisitor, StatementTransform<Code>,
         beginGen("While");
         Code code = new Code();
         code.genComment("while " + node.getCondition() + ":");
+        /* Evaluate the loop-invariant expressions of the loop into
+         * temporaries before entering the loop. */
+        SideEffects effects = SideEffects.of(node);
+        List<ExpNode> invariants = isEnabled(Optimisation.LOOP_INVARIANTS)
+                ? passManager.runStep(HOIST_INVARIANTS, () ->
+                        LoopInvariants.find(node, effects, this::isLocal, hoisted.keySet()))
+                : List.of();
+        invariantsHoisted += invariants.size();
+        for (ExpNode invariant : invariants) {
+            int temp = allocTemp();
+            code.genComment("hoist " + invariant + ":");
+            code.append(genInvariant(invariant));
+            code.genLoadConstant(temp);
+            code.generateOp(Operation.STORE_FRAME);
+            hoisted.put(invariant, temp);
+        }
+        /* Records modified within the loop may be nil on later iterations */
+        nonNil.removeIf(effects::mayModify);
         /* Generate the code to evaluate the condition. */
-        code.append(node.getCondition().genCode(this));
-        /* Generate the code for the loop body */
+        Code loopCode = node.getCondition().genCode(this);
+        Set<SymEntry.VarEntry> afterCondition = new HashSet<>(nonNil);
+        /* Generate the code for the loop body, which is never in tail position */
+        boolean savedTailPosition = tailPosition;
+        tailPosition = false;
         Code bodyCode = node.getLoopStmt().genCode(this);
+        tailPosition = savedTailPosition;
+        String key = profileKey(node);
+        if (profiling) {
+            loopCode.genProfilePoint(key);
+        }
+        if (isRarelyExecuted(key, false)) {
+            /* The loop usually repeats, so test the condition at the
+             * bottom of the loop, so that an iteration takes a single
+             * branch back to the top. */
+            Instruction.LabelInstruction topLabel = new Instruction.LabelInstruction("loop");
+            Instruction.LabelInstruction testLabel = new Instruction.LabelInstruction("loop test");
+            code.genJumpAlways(testLabel);
+            code.genLabel(topLabel);
+            code.append(bodyCode);
+            code.genLabel(testLabel);
+            code.append(loopCode);
+            code.genJumpIfTrue(topLabel);
+        } else {
+            genTopTestedLoop(code, loopCode, bodyCode);
+        }
+        /* The loop exits after evaluating the condition */
+        nonNil = afterCondition;
+        for (ExpNode invariant : invariants) {
+            freeTemps.add(hoisted.remove(invariant));
+        }
+        endGen("While");
+        return code;
+    }
+
+    /**
+     * Append to code a loop testing its condition at the top.
+     */
+    private void genTopTestedLoop(Code code, Code loopCode, Code bodyCode) {
         /* Add a branch over the loop body on false.
          * The offset is the size of the loop body code plus
          * the size of the branch to follow the body.
          */
-        code.genJumpIfFalse(bodyCode.size() + Code.SIZE_JUMP_ALWAYS);
+        loopCode.genJumpIfFalse(bodyCode.size() + Code.SIZE_JUMP_ALWAYS);
         /* Append the code for the body */
-        code.append(bodyCode);
+        loopCode.append(bodyCode);
         /* Add a branch back to the condition.
-         * The offset is the total size of the current code plus the
+         * The offset is the total size of the current loop code plus the
          * size of a Jump Always (being generated).
          */
-        code.genJumpAlways(-(code.size() + Code.SIZE_JUMP_ALWAYS));
-        endGen("While");
+        loopCode.genJumpAlways(-(loopCode.size() + Code.SIZE_JUMP_ALWAYS));
+        code.append(loopCode);
+    }
+
+    /**
+     * @return the key identifying the condition of the statement in a
+     * branch profile
+     */
+    private String profileKey(StatementNode node) {
+        /* The code of an inlined procedure comes from the procedure */
+        SymEntry.ProcedureEntry proc = inlineStack.isEmpty() ? currentProcedure
+                : inlineStack.peek();
+        return BranchProfile.key(proc.getIdent(), node.getLocation().getLine(),
+                node.getLocation().getColumn());
+    }
+
+    /**
+     * @return true iff the profile shows that the condition identified by
+     * the key rarely has the given outcome, i.e., in at most one in
+     * COLD_RATIO evaluations
+     */
+    private boolean isRarelyExecuted(String key, boolean outcome) {
+        if (profile == null || !profile.contains(key) ||
+                !isEnabled(Optimisation.PROFILE_LAYOUT)) {
+            return false;
+        }
+        long rare = outcome ? profile.getTrueCount(key) : profile.getFalseCount(key);
+        long common = outcome ? profile.getFalseCount(key) : profile.getTrueCount(key);
+        return common > 0 && rare * COLD_RATIO <= common + rare;
+    }
+
+    /**
+     * Append rarely executed code, with the label to branch to it, to
+     * the code placed after the procedure, followed by a branch back to
+     * the continuation label, if any.
+     */
+    private void genColdCode(Instruction.LabelInstruction label, Code cold,
+                             Instruction.LabelInstruction continuation) {
+        coldCode.genLabel(label);
+        coldCode.append(cold);
+        if (continuation != null) {
+            coldCode.genJumpAlways(continuation);
+        }
+    }
+
+    /**
+     * @return true iff the record allocated by the expression and
+     * assigned to the lvalue may be allocated in the current frame,
+     * because the lvalue is a local variable whose records do not escape.
+     */
+    private boolean isStackRecord(ExpNode lValue, ExpNode.NewRecordNode newRecord) {
+        return lValue instanceof ExpNode.VariableNode variable &&
+                stackRecords.contains(variable.getVariable()) &&
+                isLocal(variable.getVariable()) &&
+                newRecord.getType() instanceof Type.RecordType recordType &&
+                recordType.getFieldSpace() > 0;
+    }
+
+    /**
+     * Generate code to allocate a record in the current frame and
+     * initialise it, leaving its absolute address on the stack.
+     */
+    private Code genStackRecord(ExpNode.NewRecordNode node) {
+        beginGen("NewRecord");
+        Code code = new Code();
+        int space = ((Type.RecordType) node.getType()).getFieldSpace();
+        //field values in order, which is the order of their offsets
+        for (ExpNode expr : node.getExpressions()) {
+            code.append(expr.genCode(this));
+        }
+        int offset = frameScope.allocVariableSpace(space);
+        code.genComment("record allocated in frame at " + offset + ":");
+        code.genLoadConstant(offset);
+        if (space == 1) {
+            code.generateOp(Operation.STORE_FRAME);
+        } else {
+            code.genLoadConstant(space);
+            code.generateOp(Operation.STORE_MULTI);
+        }
+        code.genLoadConstant(offset);
+        code.generateOp(Operation.TO_GLOBAL);
+        stackAllocations++;
+        endGen("NewRecord");
         return code;
     }
+
+    /**
+     * @return true iff the variable is allocated in the current frame
+     */
+    private boolean isLocal(SymEntry.VarEntry var) {
+        return inlinedLocals.containsKey(var) || var.getLevel() == staticLevel;
+    }
+
+    /**
+     * Allocate a temporary in the current frame.
+     *
+     * @return offset of the temporary
+     */
+    private int allocTemp() {
+        if (!freeTemps.isEmpty()) {
+            return freeTemps.remove(freeTemps.size() - 1);
+        }
+        return frameScope.allocVariableSpace(1);
+    }
+
+    /**
+     * Generate the code to evaluate a loop-invariant expression.
+     * For a field access the value is the pointer to the record, which
+     * may be nil, so that evaluating it cannot trap.
+     */
+    private Code genInvariant(ExpNode invariant) {
+        if (invariant instanceof ExpNode.FieldAccessNode fieldAccess) {
+            return genRecordPointer(fieldAccess);
+        }
+        return invariant.genCode(this);
+    }
+
+    /**
+     * @return code to load the value of an expression hoisted out of an
+     * enclosing loop, or null if the expression has not been hoisted
+     */
+    private Code loadHoisted(ExpNode node) {
+        Integer temp = hoisted.get(node);
+        if (temp == null) {
+            return null;
+        }
+        Code code = new Code();
+        code.genLoadConstant(temp);
+        code.generateOp(Operation.LOAD_FRAME);
+        return code;
+    }
+
     //************* Expression node code generation visit methods
 
     /**
@@ -253,14 +1082,7 @@ public class CodeGenerator implements DeclVisitor, StatementTransform<Code>,
      */
     public Code visitConstNode(ExpNode.ConstNode node) {
         beginGen("Const");
-        Code code = new Code();
-        if (node.getValue() == 0) {
-            code.generateOp(Operation.ZERO);
-        } else if (node.getValue() == 1) {
-            code.generateOp(Operation.ONE);
-        } else {
-            code.genLoadConstant(node.getValue());
-        }
+        Code code = genConstant(node.getValue());
         endGen("Const");
         return code;
     }
@@ -280,27 +1102,78 @@ public class CodeGenerator implements DeclVisitor, StatementTransform<Code>,
      * Generate code for a binary operator expression.
      */
     public Code visitBinaryNode(ExpNode.BinaryNode node) {
+        Code hoistedCode = loadHoisted(node);
+        if (hoistedCode != null) {
+            return hoistedCode;
+        }
         beginGen("Binary");
         Code code;
         ExpNode left = node.getLeft();
         ExpNode right = node.getRight();
+        Integer value = constantValue(node);
+        if (value != null) {
+            /* Evaluated at compile time */
+            constantsFolded++;
+            code = genConstant(value);
+            endGen("Binary");
+            return code;
+        }
+        Integer leftValue = constantValue(left);
+        Integer rightValue = constantValue(right);
         switch (node.getOp()) {
             case ADD_OP -> {
-                code = genArgs(left, right);
-                code.generateOp(Operation.ADD);
+                if (rightValue != null) {
+                    code = left.genCode(this);
+                    code.genAddConstant(rightValue);
+                } else if (leftValue != null) {
+                    code = right.genCode(this);
+                    code.genAddConstant(leftValue);
+                } else {
+                    code = genArgs(left, right);
+                    code.generateOp(Operation.ADD);
+                }
             }
             case SUB_OP -> {
-                code = genArgs(left, right);
-                code.generateOp(Operation.NEGATE);
-                code.generateOp(Operation.ADD);
+                if (rightValue != null && rightValue != Integer.MIN_VALUE) {
+                    code = left.genCode(this);
+                    code.genAddConstant(-rightValue);
+                } else if (leftValue != null && leftValue == 0) {
+                    code = right.genCode(this);
+                    code.generateOp(Operation.NEGATE);
+                } else {
+                    code = genArgs(left, right);
+                    code.generateOp(Operation.SUB);
                 }
+            }
             case MUL_OP -> {
-                code = genArgs(left, right);
-                code.generateOp(Operation.MPY);
+                if (rightValue != null) {
+                    code = genMultiply(left, rightValue);
+                } else if (leftValue != null) {
+                    code = genMultiply(right, leftValue);
+                } else {
+                    code = genArgs(left, right);
+                    code.generateOp(Operation.MPY);
+                }
             }
             case DIV_OP -> {
-                code = genArgs(left, right);
-                code.generateOp(Operation.DIV);
+                if (rightValue != null && rightValue == 1) {
+                    code = left.genCode(this);
+                } else if (rightValue != null && rightValue == -1) {
+                    /* Also correct for the most negative integer */
+                    code = left.genCode(this);
+                    code.generateOp(Operation.NEGATE);
+                } else if (rightValue != null && isPowerOfTwo(rightValue) &&
+                        RangeAnalysis.rangeOf(left).getLower() >= 0) {
+                    /* Shifting right rounds towards minus infinity, which
+                     * is only the same as division for a non-negative
+                     * dividend */
+                    code = left.genCode(this);
+                    code.genLoadConstant(Integer.numberOfTrailingZeros(rightValue));
+                    code.generateOp(Operation.SHIFT_RIGHT);
+                } else {
+                    code = genArgs(left, right);
+                    code.generateOp(Operation.DIV);
+                }
             }
             case EQUALS_OP -> {
                 code = genArgs(left, right);
@@ -337,11 +1210,72 @@ public class CodeGenerator implements DeclVisitor, StatementTransform<Code>,
         endGen("Binary");
         return code;
     }
+
+    /**
+     * Generate code to multiply an expression by a constant.
+     */
+    private Code genMultiply(ExpNode exp, int factor) {
+        Code code = exp.genCode(this);
+        if (factor == -1) {
+            code.generateOp(Operation.NEGATE);
+        } else if (factor != 1 && isPowerOfTwo(factor)) {
+            code.genLoadConstant(Integer.numberOfTrailingZeros(factor));
+            code.generateOp(Operation.SHIFT_LEFT);
+        } else if (factor != 1) {
+            code.append(genConstant(factor));
+            code.generateOp(Operation.MPY);
+        }
+        return code;
+    }
+
+    /**
+     * @return the value of an expression evaluated at compile time,
+     * or null if it cannot be or instruction selection is off
+     */
+    private Integer constantValue(ExpNode exp) {
+        if (!isEnabled(Optimisation.INSTRUCTION_SELECTION)) {
+            return null;
+        }
+        return ConstantFolding.valueOf(exp);
+    }
+
+    private static boolean isPowerOfTwo(int value) {
+        return value > 0 && (value & (value - 1)) == 0;
+    }
+
+    /**
+     * Generate code to load a constant, using the one word
+     * instructions for zero and one.
+     */
+    private Code genConstant(int value) {
+        Code code = new Code();
+        if (value == 0) {
+            code.generateOp(Operation.ZERO);
+        } else if (value == 1) {
+            code.generateOp(Operation.ONE);
+        } else {
+            code.genLoadConstant(value);
+        }
+        return code;
+    }
+
     /**
      * Generate code for a unary operator expression.
      */
     public Code visitUnaryNode(ExpNode.UnaryNode node) {
+        Code hoistedCode = loadHoisted(node);
+        if (hoistedCode != null) {
+            return hoistedCode;
+        }
         beginGen("Unary");
+        Integer value = constantValue(node);
+        if (value != null) {
+            /* Evaluated at compile time */
+            constantsFolded++;
+            Code code = genConstant(value);
+            endGen("Unary");
+            return code;
+        }
         Code code = node.getArg().genCode(this);
         switch (node.getOp()) {
             case NEG_OP ->
@@ -357,9 +1291,12 @@ public class CodeGenerator implements DeclVisitor, StatementTransform<Code>,
      * Generate code to dereference an RValue.
      */
     public Code visitDereferenceNode(ExpNode.DereferenceNode node) {
+        Code hoistedCode = loadHoisted(node);
+        if (hoistedCode != null) {
+            return hoistedCode;
+        }
         beginGen("Dereference");
-        Code code = node.getLeftValue().genCode(this);
-        code.genLoad(node.getType());
+        Code code = genLoadValue(node.getLeftValue());
         endGen("Dereference");
         return code;
     }
@@ -380,10 +1317,20 @@ public class CodeGenerator implements DeclVisitor, StatementTransform<Code>,
      * It pushes the address of the variable as an offset from the frame pointer
      */
     public Code visitVariableNode(ExpNode.VariableNode node) {
+        Code hoistedCode = loadHoisted(node);
+        if (hoistedCode != null) {
+            return hoistedCode;
+        }
         beginGen("Variable");
         SymEntry.VarEntry var = node.getVariable();
         Code code = new Code();
-        code.genMemRef(staticLevel - var.getLevel(), var.getOffset());
+        Integer inlinedOffset = inlinedLocals.get(var);
+        if (inlinedOffset != null) {
+            /* A local of an inlined procedure lives in the current frame */
+            code.genMemRef(0, inlinedOffset);
+        } else {
+            code.genMemRef(staticLevel - var.getLevel(), var.getOffset());
+        }
         endGen("Variable");
         return code;
     }
@@ -395,8 +1342,15 @@ public class CodeGenerator implements DeclVisitor, StatementTransform<Code>,
     public Code visitNarrowSubrangeNode(ExpNode.NarrowSubrangeNode node) {
         beginGen("NarrowSubrange");
         Code code = node.getExp().genCode(this);
-        code.genBoundsCheck(node.getSubrangeType().getLower(),
-                node.getSubrangeType().getUpper());
+        int lower = node.getSubrangeType().getLower();
+        int upper = node.getSubrangeType().getUpper();
+        if (isEnabled(Optimisation.CHECK_ELIMINATION) &&
+                RangeAnalysis.rangeOf(node.getExp()).isWithin(lower, upper)) {
+            /* The value is known to be within the subrange */
+            boundsChecksRemoved++;
+        } else {
+            code.genBoundsCheck(lower, upper);
+        }
         endGen("NarrowSubrange");
         return code;
     }
@@ -405,6 +1359,10 @@ public class CodeGenerator implements DeclVisitor, StatementTransform<Code>,
      * Generate code to widen a sub-range to an integer.
      */
     public Code visitWidenSubrangeNode(ExpNode.WidenSubrangeNode node) {
+        Code hoistedCode = loadHoisted(node);
+        if (hoistedCode != null) {
+            return hoistedCode;
+        }
         beginGen("WidenSubrange");
         /* Widening doesn't require anything extra other than
          * generating code for its expression.
@@ -421,34 +1379,13 @@ public class CodeGenerator implements DeclVisitor, StatementTransform<Code>,
 
         if (recordType != Type.ERROR_TYPE) {
 
-            //alloc heap
-            code.genLoadConstant(recordType.getFieldSpace());
-            code.generateOp(Operation.ALLOC_HEAP);
-
-            List<ExpNode> expressions = node.getExpressions();
-            List<Type.Field> fields = recordType.getFieldList();
-
-
-            //store field values
-            for (int i=0; i < expressions.size(); i++) {
-                Type.Field field = fields.get(i);
-                ExpNode expr = expressions.get(i);
-
-                //duplicate for field calculation
-                code.generateOp(Operation.DUP);
-                //get absolute field address
-                if (field.getOffset() != 0) {
-                    code.genLoadConstant(field.getOffset());
-                    code.generateOp(Operation.ADD);
-                }
-
-                //absolute adress to frame-relative
-                code.generateOp(Operation.TO_LOCAL);
+            //field values in order, which is the order of their offsets
+            for (ExpNode expr : node.getExpressions()) {
                 code.append(expr.genCode(this));
-                //swap to get record at top of stack for store
-                code.generateOp(Operation.SWAP);
-                code.generateOp(Operation.STORE_FRAME);
             }
+            //alloc heap initialised with the field values
+            code.genLoadConstant(recordType.getFieldSpace());
+            code.generateOp(Operation.ALLOC_INIT);
         }
         endGen("NewRecord");
         return code;
@@ -457,17 +1394,22 @@ public class CodeGenerator implements DeclVisitor, StatementTransform<Code>,
     @Override
     public Code visitFieldAccessNode(ExpNode.FieldAccessNode node) {
         beginGen("FieldAccess");
-        Code code = new Code();
-
-        // get record addrss
-        code.append(node.getRecord().genCode(this));
+        // get record address
+        Code code = genRecordPointer(node);
+        Code passCode = genFieldAddress(node);
 
-        Type resolvedRefType = node.getRecord().getType().getRecordType();
-        code.genLoad(resolvedRefType);
-        Type.RecordType recordType = node.getRecord().getType().getRecordType();
-
-        String fieldName = node.getFieldName();
-        Type.Field field = recordType.getField(fieldName);
+        if (node.getRecord() instanceof ExpNode.VariableNode variable) {
+            SymEntry.VarEntry var = variable.getVariable();
+            if (nonNil.contains(var) && isEnabled(Optimisation.CHECK_ELIMINATION)) {
+                /* Record known not to be nil */
+                nilChecksRemoved++;
+                code.append(passCode);
+                endGen("FieldAccess");
+                return code;
+            }
+            /* Either the check passes or execution stops */
+            nonNil.add(var);
+        }
 
         // nil check
         Code checkCode = new Code();
@@ -481,21 +1423,95 @@ public class CodeGenerator implements DeclVisitor, StatementTransform<Code>,
         errorCode.genLoadConstant(StackMachine.NIL_RECORD);
         errorCode.generateOp(Operation.STOP);
 
-       //calculate field address if pass
-        Code passCode = new Code();
-        if (field.getOffset() != 0) {
-            passCode.genLoadConstant(field.getOffset());
-            passCode.generateOp(Operation.ADD);
+        // the error code is placed after the procedure
+        Instruction.LabelInstruction nilLabel = new Instruction.LabelInstruction("nil");
+        code.append(checkCode);
+        code.genJumpIfTrue(nilLabel);
+        code.append(passCode);
+        genColdCode(nilLabel, errorCode, null);
+
+        endGen("FieldAccess");
+        return code;
+    }
+
+    /**
+     * @return true iff the value of the expression is a record pointer
+     * known not to be nil
+     */
+    private boolean isNonNil(ExpNode exp) {
+        if (exp instanceof ExpNode.NewRecordNode) {
+            return true;
         }
+        return exp instanceof ExpNode.DereferenceNode deref &&
+                deref.getLeftValue() instanceof ExpNode.VariableNode variable &&
+                nonNil.contains(variable.getVariable());
+    }
 
-        // absolute field address to frame-relative
-        passCode.generateOp(Operation.TO_LOCAL);
+    /**
+     * Generate code to load the pointer to the record of a field access.
+     */
+    private Code genRecordPointer(ExpNode.FieldAccessNode node) {
+        Code code = loadHoisted(node);
+        if (code != null) {
+            /* The pointer was loaded before the loop */
+            return code;
+        }
+        return genLoadValue(node.getRecord());
+    }
 
-        // generate if-then-else for handling of cases
-        code.genIfThenElse(checkCode, errorCode, passCode);
+    /**
+     * Generate code to load the value of an lvalue.
+     */
+    private Code genLoadValue(ExpNode lValue) {
+        if (isFieldWord(lValue)) {
+            return genFieldOp((ExpNode.FieldAccessNode) lValue, Operation.LOAD_FIELD);
+        }
+        Code code = lValue.genCode(this);
+        code.genLoad(lValue.getType().optDereferenceType());
+        return code;
+    }
 
+    /**
+     * @return true iff the lvalue is a field of a record that occupies
+     * a single word, and so can be accessed by LOAD_FIELD and STORE_FIELD
+     */
+    private boolean isFieldWord(ExpNode lValue) {
+        return lValue instanceof ExpNode.FieldAccessNode &&
+                lValue.getType().optDereferenceType().getSpace() == 1;
+    }
 
-        endGen("FieldAccess");
+    /**
+     * Generate code to load (LOAD_FIELD) or store (STORE_FIELD) a field
+     * of a record. The instruction traps an access to the nil record.
+     */
+    private Code genFieldOp(ExpNode.FieldAccessNode node, Operation op) {
+        Type.RecordType recordType = node.getRecord().getType().getRecordType();
+        Type.Field field = recordType.getField(node.getFieldName());
+        Code code = genRecordPointer(node);
+        code.genLoadConstant(field.getOffset());
+        code.generateOp(op);
+        if (node.getRecord() instanceof ExpNode.VariableNode variable) {
+            /* Either the access succeeds or execution stops */
+            nonNil.add(variable.getVariable());
+        }
+        return code;
+    }
+
+    /**
+     * Generate code to convert the (non-nil) record pointer on top of the
+     * stack to the frame-relative address of the accessed field.
+     */
+    private Code genFieldAddress(ExpNode.FieldAccessNode node) {
+        Type.RecordType recordType = node.getRecord().getType().getRecordType();
+        Type.Field field = recordType.getField(node.getFieldName());
+        Code code = new Code();
+        //calculate field address
+        if (field.getOffset() != 0) {
+            code.genLoadConstant(field.getOffset());
+            code.generateOp(Operation.ADD);
+        }
+        // absolute field address to frame-relative
+        code.generateOp(Operation.TO_LOCAL);
         return code;
     }
 
@@ -0,0 +1,58 @@
+package tree;
+
+import syms.Type;
+
+/**
+ * class ConstantFolding - evaluates at compile time the expressions
+ * whose values depend only on constants.
+ */
+public class ConstantFolding {
+
+    /**
+     * @return the value of an expression that can be evaluated at compile
+     * time, or null if it depends on variables or may stop at run time
+     * (division by zero or a value outside a subrange).
+     * Arithmetic wraps around as it does on the stack machine.
+     */
+    public static Integer valueOf(ExpNode exp) {
+        if (exp instanceof ExpNode.ConstNode node) {
+            return node.getValue();
+        } else if (exp instanceof ExpNode.WidenSubrangeNode node) {
+            return valueOf(node.getExp());
+        } else if (exp instanceof ExpNode.NarrowSubrangeNode node) {
+            Integer value = valueOf(node.getExp());
+            Type.SubrangeType subrange = node.getSubrangeType();
+            if (value == null || value < subrange.getLower() || subrange.getUpper() < value) {
+                return null;
+            }
+            return value;
+        } else if (exp instanceof ExpNode.UnaryNode node) {
+            Integer arg = valueOf(node.getArg());
+            return arg == null || node.getOp() != Operator.NEG_OP ? null : -arg;
+        } else if (exp instanceof ExpNode.BinaryNode node) {
+            Integer left = valueOf(node.getLeft());
+            Integer right = valueOf(node.getRight());
+            if (left == null || right == null) {
+                return null;
+            }
+            return switch (node.getOp()) {
+                case ADD_OP -> left + right;
+                case SUB_OP -> left - right;
+                case MUL_OP -> left * right;
+                case DIV_OP -> right == 0 ? null : left / right;
+                case EQUALS_OP -> toBoolean(left.intValue() == right.intValue());
+                case NEQUALS_OP -> toBoolean(left.intValue() != right.intValue());
+                case LESS_OP -> toBoolean(left < right);
+                case LEQUALS_OP -> toBoolean(left <= right);
+                case GREATER_OP -> toBoolean(left > right);
+                case GEQUALS_OP -> toBoolean(left >= right);
+                default -> null;
+            };
+        }
+        return null;
+    }
+
+    private static int toBoolean(boolean value) {
+        return value ? Type.TRUE_VALUE : Type.FALSE_VALUE;
+    }
+}
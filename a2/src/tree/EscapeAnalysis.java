@@ -0,0 +1,133 @@
+package tree;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import syms.SymEntry;
+
+/**
+ * class EscapeAnalysis - finds the local variables of record type whose
+ * records cannot outlive the activation of the procedure declaring them.
+ * Such a variable is only ever used as the record of a field access,
+ * as the target of an assignment, or as an operand of = or !=, anywhere
+ * in the program (including nested procedures). Its value is never
+ * copied to another variable or field, so a record assigned to it by
+ * "x := new R(...)" in the declaring procedure is reachable only
+ * through x, and may be allocated in the frame of that procedure.
+ * Because x is the only reference, the record of the previous execution
+ * of an allocation within a loop is no longer reachable once the
+ * allocation is executed again, so the same frame space may be reused.
+ */
+class EscapeAnalysis {
+    /**
+     * Local variables of record type declared in the program
+     */
+    private final Set<SymEntry.VarEntry> candidates = new HashSet<>();
+    /**
+     * Variables whose value is used other than in the ways allowed
+     */
+    private final Set<SymEntry.VarEntry> escaping = new HashSet<>();
+
+    private EscapeAnalysis() {
+    }
+
+    /**
+     * @param program the main program
+     * @return the variables whose records do not escape the activation
+     * of the procedure declaring them
+     */
+    static Set<SymEntry.VarEntry> confined(DeclNode.ProcedureNode program) {
+        EscapeAnalysis analysis = new EscapeAnalysis();
+        analysis.search(program);
+        analysis.candidates.removeAll(analysis.escaping);
+        return analysis.candidates;
+    }
+
+    private void search(DeclNode.ProcedureNode procedure) {
+        StatementNode.BlockNode block = procedure.getBlock();
+        for (SymEntry entry : block.getBlockLocals().getEntries()) {
+            if (entry instanceof SymEntry.VarEntry var &&
+                    var.getType().getRecordType() != null) {
+                candidates.add(var);
+            }
+        }
+        search(block.getBody());
+        for (DeclNode decl : block.getProcedures().getDeclarations()) {
+            search((DeclNode.ProcedureNode) decl);
+        }
+    }
+
+    private void search(StatementNode statement) {
+        if (statement instanceof StatementNode.AssignmentNode assignment) {
+            search(assignment.getExp());
+            searchTarget(assignment.getLValue());
+        } else if (statement instanceof StatementNode.ReadNode read) {
+            searchTarget(read.getLValue());
+        } else if (statement instanceof StatementNode.WriteNode write) {
+            search(write.getExp());
+        } else if (statement instanceof StatementNode.ListNode list) {
+            for (StatementNode s : list.getStatements()) {
+                search(s);
+            }
+        } else if (statement instanceof StatementNode.IfNode ifNode) {
+            search(ifNode.getCondition());
+            search(ifNode.getThenStmt());
+            search(ifNode.getElseStmt());
+        } else if (statement instanceof StatementNode.WhileNode whileNode) {
+            search(whileNode.getCondition());
+            search(whileNode.getLoopStmt());
+        }
+        /* Calls contain no expressions */
+    }
+
+    /**
+     * Search the target of an assignment or read: assigning to a
+     * variable does not copy its value anywhere.
+     */
+    private void searchTarget(ExpNode lValue) {
+        if (!(lValue instanceof ExpNode.VariableNode)) {
+            search(lValue);
+        }
+    }
+
+    private void search(ExpNode exp) {
+        if (exp instanceof ExpNode.VariableNode variable) {
+            /* The address of the variable is used */
+            escaping.add(variable.getVariable());
+        } else if (exp instanceof ExpNode.DereferenceNode deref) {
+            /* The value of the variable is used */
+            search(deref.getLeftValue());
+        } else if (exp instanceof ExpNode.FieldAccessNode fieldAccess) {
+            /* Accessing a field does not copy the record pointer */
+            if (!(fieldAccess.getRecord() instanceof ExpNode.VariableNode)) {
+                search(fieldAccess.getRecord());
+            }
+        } else if (exp instanceof ExpNode.BinaryNode binary) {
+            boolean comparison = binary.getOp() == Operator.EQUALS_OP ||
+                    binary.getOp() == Operator.NEQUALS_OP;
+            searchOperand(binary.getLeft(), comparison);
+            searchOperand(binary.getRight(), comparison);
+        } else if (exp instanceof ExpNode.UnaryNode unary) {
+            search(unary.getArg());
+        } else if (exp instanceof ExpNode.NarrowSubrangeNode narrow) {
+            search(narrow.getExp());
+        } else if (exp instanceof ExpNode.WidenSubrangeNode widen) {
+            search(widen.getExp());
+        } else if (exp instanceof ExpNode.NewRecordNode newRecord) {
+            for (ExpNode e : newRecord.getExpressions()) {
+                search(e);
+            }
+        }
+    }
+
+    /**
+     * Search an operand of a binary operator: comparing the value of
+     * a variable does not copy it.
+     */
+    private void searchOperand(ExpNode operand, boolean comparison) {
+        if (!(comparison && operand instanceof ExpNode.DereferenceNode deref &&
+                deref.getLeftValue() instanceof ExpNode.VariableNode)) {
+            search(operand);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package tree;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+import syms.SymEntry;
+
+/**
+ * class LoopInvariants - finds the expressions within a while loop
+ * (condition and body) whose values do not change while the loop executes
+ * and that are worth evaluating once before the loop.
+ * Only expressions that cannot trap are considered: division may divide
+ * by zero and narrowing may be out of bounds, so neither is hoisted,
+ * although their invariant operands may be.
+ * The pointer to the record of a field access is also invariant if the
+ * record is held in a variable that is not modified within the loop;
+ * its nil check is performed where the field is accessed.
+ */
+class LoopInvariants {
+    /**
+     * Variables possibly modified within the loop
+     */
+    private final SideEffects effects;
+    /**
+     * Whether a variable is in the current frame
+     */
+    private final Predicate<SymEntry.VarEntry> isLocal;
+    /**
+     * Expressions already hoisted out of enclosing loops
+     */
+    private final Set<ExpNode> hoisted;
+    /**
+     * Maximal invariant expressions found, in the order encountered
+     */
+    private final List<ExpNode> invariants = new ArrayList<>();
+
+    private LoopInvariants(SideEffects effects, Predicate<SymEntry.VarEntry> isLocal,
+                           Set<ExpNode> hoisted) {
+        this.effects = effects;
+        this.isLocal = isLocal;
+        this.hoisted = hoisted;
+    }
+
+    /**
+     * @param loop    while loop to search
+     * @param effects side effects of the loop
+     * @param isLocal whether a variable is in the current frame
+     * @param hoisted expressions already hoisted out of enclosing loops
+     * @return the maximal invariant expressions worth hoisting
+     */
+    static List<ExpNode> find(StatementNode.WhileNode loop, SideEffects effects,
+                              Predicate<SymEntry.VarEntry> isLocal,
+                              Set<ExpNode> hoisted) {
+        LoopInvariants finder = new LoopInvariants(effects, isLocal, hoisted);
+        finder.search(loop);
+        return finder.invariants;
+    }
+
+    private void search(StatementNode statement) {
+        if (statement instanceof StatementNode.AssignmentNode assignment) {
+            search(assignment.getExp());
+            search(assignment.getLValue());
+        } else if (statement instanceof StatementNode.ReadNode read) {
+            search(read.getLValue());
+        } else if (statement instanceof StatementNode.WriteNode write) {
+            search(write.getExp());
+        } else if (statement instanceof StatementNode.ListNode list) {
+            for (StatementNode s : list.getStatements()) {
+                search(s);
+            }
+        } else if (statement instanceof StatementNode.IfNode ifNode) {
+            search(ifNode.getCondition());
+            search(ifNode.getThenStmt());
+            search(ifNode.getElseStmt());
+        } else if (statement instanceof StatementNode.WhileNode whileNode) {
+            search(whileNode.getCondition());
+            search(whileNode.getLoopStmt());
+        }
+        /* Calls contain no expressions */
+    }
+
+    private void search(ExpNode exp) {
+        if (hoisted.contains(exp) || invariants.contains(exp)) {
+            return;
+        }
+        if (isInvariant(exp) && isWorthHoisting(exp)) {
+            invariants.add(exp);
+            return;
+        }
+        if (exp instanceof ExpNode.BinaryNode binary) {
+            search(binary.getLeft());
+            search(binary.getRight());
+        } else if (exp instanceof ExpNode.UnaryNode unary) {
+            search(unary.getArg());
+        } else if (exp instanceof ExpNode.DereferenceNode deref) {
+            search(deref.getLeftValue());
+        } else if (exp instanceof ExpNode.NarrowSubrangeNode narrow) {
+            search(narrow.getExp());
+        } else if (exp instanceof ExpNode.WidenSubrangeNode widen) {
+            search(widen.getExp());
+        } else if (exp instanceof ExpNode.NewRecordNode newRecord) {
+            for (ExpNode e : newRecord.getExpressions()) {
+                search(e);
+            }
+        } else if (exp instanceof ExpNode.FieldAccessNode fieldAccess) {
+            search(fieldAccess.getRecord());
+        }
+    }
+
+    /**
+     * @return true iff the value of the expression (the address for an
+     * lvalue) does not change during the loop and evaluating it cannot trap
+     */
+    private boolean isInvariant(ExpNode exp) {
+        if (hoisted.contains(exp)) {
+            return true;
+        } else if (exp instanceof ExpNode.ConstNode) {
+            return true;
+        } else if (exp instanceof ExpNode.VariableNode) {
+            /* The address of a variable is fixed for an activation */
+            return true;
+        } else if (exp instanceof ExpNode.DereferenceNode deref) {
+            return deref.getLeftValue() instanceof ExpNode.VariableNode variable &&
+                    !effects.mayModify(variable.getVariable());
+        } else if (exp instanceof ExpNode.BinaryNode binary) {
+            return binary.getOp() != Operator.DIV_OP &&
+                    isInvariant(binary.getLeft()) && isInvariant(binary.getRight());
+        } else if (exp instanceof ExpNode.UnaryNode unary) {
+            return isInvariant(unary.getArg());
+        } else if (exp instanceof ExpNode.WidenSubrangeNode widen) {
+            return isInvariant(widen.getExp());
+        } else if (exp instanceof ExpNode.FieldAccessNode fieldAccess) {
+            return fieldAccess.getRecord() instanceof ExpNode.VariableNode variable &&
+                    !effects.mayModify(variable.getVariable());
+        }
+        return false;
+    }
+
+    /**
+     * @return true iff evaluating the invariant expression costs more
+     * than loading it from a temporary in the current frame
+     */
+    private boolean isWorthHoisting(ExpNode exp) {
+        if (exp.getType().getSpace() != 1) {
+            return false;
+        } else if (ConstantFolding.valueOf(exp) != null) {
+            /* Evaluated at compile time */
+            return false;
+        } else if (exp instanceof ExpNode.VariableNode variable) {
+            return !isLocal.test(variable.getVariable());
+        } else if (exp instanceof ExpNode.DereferenceNode deref) {
+            return deref.getLeftValue() instanceof ExpNode.VariableNode variable &&
+                    !isLocal.test(variable.getVariable());
+        } else if (exp instanceof ExpNode.UnaryNode unary) {
+            return !(unary.getArg() instanceof ExpNode.ConstNode);
+        } else if (exp instanceof ExpNode.WidenSubrangeNode widen) {
+            return isWorthHoisting(widen.getExp());
+        } else if (exp instanceof ExpNode.FieldAccessNode fieldAccess) {
+            /* The record pointer is hoisted */
+            return fieldAccess.getRecord() instanceof ExpNode.VariableNode variable &&
+                    !isLocal.test(variable.getVariable());
+        }
+        return exp instanceof ExpNode.BinaryNode;
+    }
+}
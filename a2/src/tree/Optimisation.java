@@ -0,0 +1,49 @@
+package tree;
+
+import java.util.EnumSet;
+
+/**
+ * enumeration Optimisation - the optimisations performed by the code
+ * generator, with the optimisation level (-O) from which each is enabled.
+ * Level 1 enables optimisations local to a statement or procedure,
+ * level 2 adds those that change the structure of procedures and loops.
+ */
+public enum Optimisation {
+    INSTRUCTION_SELECTION(1),   /* Constant folding and cheaper instructions */
+    CHECK_ELIMINATION(1),       /* Omit bounds and nil checks known to pass */
+    CONTROL_FLOW(1),            /* Jump threading and unreachable code removal */
+    DATAFLOW(1),                /* Constant loads and dead stores of locals */
+    PROFILE_LAYOUT(1),          /* Code layout using a branch profile */
+    INLINING(2),                /* Inline small procedures */
+    TAIL_CALLS(2),              /* Self-recursive tail calls reuse the frame */
+    LOOP_INVARIANTS(2),         /* Hoist loop-invariant expressions */
+    ESCAPE_ANALYSIS(2),         /* Allocate non-escaping records in frames */
+    PARTIAL_EVALUATION(2);      /* Run programs without input at compile time */
+
+    /* Greatest optimisation level */
+    public static final int MAX_LEVEL = 2;
+
+    /* Least level at which the optimisation is enabled */
+    private final int level;
+
+    Optimisation(int level) {
+        this.level = level;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * @return the optimisations enabled at the optimisation level
+     */
+    public static EnumSet<Optimisation> forLevel(int level) {
+        EnumSet<Optimisation> enabled = EnumSet.noneOf(Optimisation.class);
+        for (Optimisation optimisation : values()) {
+            if (optimisation.level <= level) {
+                enabled.add(optimisation);
+            }
+        }
+        return enabled;
+    }
+}
@@ -0,0 +1,102 @@
+package tree;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import machine.Operation;
+import machine.StackMachine;
+import source.Errors;
+
+/**
+ * class PartialEvaluator - evaluates at compile time a program that
+ * never reads input. The output of such a program is determined by the
+ * program alone, so its generated code is run on a stack machine with a
+ * limit on the number of instructions executed. If it returns from the
+ * main program within the limit, the program is replaced by residual
+ * code that writes the values it wrote. If it exceeds the limit or ends
+ * with a runtime error, the generated code is kept, so that the error
+ * is reported when the program is run.
+ */
+class PartialEvaluator {
+    /**
+     * Maximum number of instructions executed at compile time
+     */
+    static final int STEP_BUDGET = 1_000_000;
+
+    private PartialEvaluator() {
+    }
+
+    /**
+     * @param program the main program
+     * @return true iff the program or any of its procedures contains
+     * a read statement
+     */
+    static boolean readsInput(DeclNode.ProcedureNode program) {
+        StatementNode.BlockNode block = program.getBlock();
+        if (readsInput(block.getBody())) {
+            return true;
+        }
+        for (DeclNode decl : block.getProcedures().getDeclarations()) {
+            if (readsInput((DeclNode.ProcedureNode) decl)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean readsInput(StatementNode statement) {
+        if (statement instanceof StatementNode.ReadNode) {
+            return true;
+        } else if (statement instanceof StatementNode.ListNode list) {
+            for (StatementNode s : list.getStatements()) {
+                if (readsInput(s)) {
+                    return true;
+                }
+            }
+        } else if (statement instanceof StatementNode.IfNode ifNode) {
+            return readsInput(ifNode.getThenStmt()) ||
+                    readsInput(ifNode.getElseStmt());
+        } else if (statement instanceof StatementNode.WhileNode whileNode) {
+            return readsInput(whileNode.getLoopStmt());
+        }
+        return false;
+    }
+
+    /**
+     * Run the code of a program that does not read input.
+     *
+     * @param procedures the code generated for the program
+     * @return the residual code for the main program, or null if the
+     * program did not complete within the step budget, or the residual
+     * code would not fit in the code space of the stack machine
+     */
+    static Code evaluate(Procedures procedures, Errors errors) {
+        ByteArrayOutputStream outputArray = new ByteArrayOutputStream();
+        StackMachine machine = new StackMachine(errors,
+                new PrintStream(outputArray, true), false, procedures);
+        machine.setStepLimit(STEP_BUDGET);
+        machine.run();
+        if (!machine.hasCompleted()) {
+            return null;
+        }
+        List<Integer> written = new ArrayList<>();
+        for (String line : outputArray.toString().split("\\R")) {
+            if (!line.isEmpty()) {
+                written.add(Integer.parseInt(line));
+            }
+        }
+        Code code = new Code();
+        code.genComment("evaluated at compile time");
+        for (int value : written) {
+            code.genLoadConstant(value);
+            code.generateOp(Operation.WRITE);
+        }
+        code.generateOp(Operation.RETURN);
+        if (code.size() > StackMachine.MEM_LIMIT - StackMachine.CODE_START) {
+            return null;
+        }
+        return code;
+    }
+}
@@ -0,0 +1,297 @@
+package tree;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import cfg.CodeVerifier;
+import machine.Instruction;
+
+/**
+ * class PassManager - runs the passes of the optimisations, keeping the
+ * time taken by each pass and its effect. Tree passes analyse the
+ * abstract syntax tree before code is generated from it, code passes
+ * transform the code of each procedure once it has been generated, and
+ * program passes transform the code of the whole program. Optimisations
+ * made by the code generator as it walks the tree are steps of
+ * generation, for which the number of times each is applied is kept.
+ * If verification is on the code is checked by CodeVerifier after it is
+ * generated and after each code and program pass.
+ */
+public class PassManager {
+    /**
+     * Name of the statistics for generating code from the tree
+     */
+    public static final String GENERATION = "code generation";
+
+    /**
+     * The kinds of pass, in the order they are run
+     */
+    private enum Kind {
+        TREE, GENERATION, STEP, CODE, PROGRAM
+    }
+
+    /**
+     * A pass transforming the code of a procedure
+     */
+    private record Pass(String name, UnaryOperator<Code> transform) {
+    }
+
+    /**
+     * A pass analysing the tree of the program
+     */
+    private record TreePass(String name, Consumer<DeclNode.ProcedureNode> analysis) {
+    }
+
+    /**
+     * A pass transforming the code of the whole program
+     */
+    private record ProgramPass(String name,
+            BiFunction<DeclNode.ProcedureNode, Procedures, Procedures> transform) {
+    }
+
+    /**
+     * Totals over all procedures for a pass
+     */
+    private static class Statistics {
+        final Kind kind;
+        /* False for steps of generation that are not timed separately */
+        final boolean timed;
+        long nanos = 0;
+        int instructionsBefore = 0;
+        int instructionsAfter = 0;
+        int applications = 0;
+
+        Statistics(Kind kind, boolean timed) {
+            this.kind = kind;
+            this.timed = timed;
+        }
+    }
+
+    private final List<TreePass> treePasses = new ArrayList<>();
+    private final List<Pass> passes = new ArrayList<>();
+    private final List<ProgramPass> programPasses = new ArrayList<>();
+    private final Map<String, Statistics> statistics = new LinkedHashMap<>();
+    private boolean verify = false;
+
+    /**
+     * Time taken by the passes and steps run during generation
+     */
+    private long generationPassNanos = 0;
+
+    public PassManager() {
+        statistics.put(GENERATION, new Statistics(Kind.GENERATION, true));
+    }
+
+    /**
+     * Add a pass over the tree to be run before code is generated.
+     */
+    public void addTreePass(String name, Consumer<DeclNode.ProcedureNode> analysis) {
+        treePasses.add(new TreePass(name, analysis));
+        statistics.put(name, new Statistics(Kind.TREE, true));
+    }
+
+    /**
+     * Add a step of code generation, whose time is kept only if timed.
+     */
+    public void addStep(String name, boolean timed) {
+        statistics.put(name, new Statistics(Kind.STEP, timed));
+    }
+
+    /**
+     * Add a pass to be run after the passes already added.
+     */
+    public void addPass(String name, UnaryOperator<Code> transform) {
+        passes.add(new Pass(name, transform));
+        statistics.put(name, new Statistics(Kind.CODE, true));
+    }
+
+    /**
+     * Add a pass over the code of the whole program to be run after the
+     * program passes already added. The pass returns null if it does not
+     * apply to the program.
+     */
+    public void addProgramPass(String name,
+            BiFunction<DeclNode.ProcedureNode, Procedures, Procedures> transform) {
+        programPasses.add(new ProgramPass(name, transform));
+        statistics.put(name, new Statistics(Kind.PROGRAM, true));
+    }
+
+    /**
+     * Set whether the code is verified after each pass.
+     */
+    public void setVerify(boolean verify) {
+        this.verify = verify;
+    }
+
+    /**
+     * Run the tree passes over the tree of the program.
+     */
+    public void runTreePasses(DeclNode.ProcedureNode tree) {
+        for (TreePass pass : treePasses) {
+            long start = System.nanoTime();
+            pass.analysis().accept(tree);
+            statistics.get(pass.name()).nanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Run a timed step of code generation.
+     *
+     * @return the result of the step
+     */
+    public <T> T runStep(String name, Supplier<T> step) {
+        long start = System.nanoTime();
+        T result = step.get();
+        long nanos = System.nanoTime() - start;
+        statistics.get(name).nanos += nanos;
+        generationPassNanos += nanos;
+        return result;
+    }
+
+    /**
+     * Record the number of times a step of code generation was applied.
+     */
+    public void recordApplications(String name, int applications) {
+        statistics.get(name).applications += applications;
+    }
+
+    /**
+     * Record the time taken to generate the code of the program,
+     * including the time taken by the passes and steps run during
+     * generation, which is excluded from the time recorded for generation.
+     */
+    public void recordGeneration(long nanos) {
+        statistics.get(GENERATION).nanos += nanos - generationPassNanos;
+        generationPassNanos = 0;
+    }
+
+    /**
+     * Run the passes over the code of a procedure.
+     *
+     * @param procedure name of the procedure, for verification errors
+     * @return the transformed code
+     */
+    public Code run(String procedure, Code code) {
+        statistics.get(GENERATION).instructionsAfter += countInstructions(code);
+        if (verify) {
+            CodeVerifier.verify(procedure, GENERATION, code);
+        }
+        for (Pass pass : passes) {
+            Statistics stats = statistics.get(pass.name());
+            stats.instructionsBefore += countInstructions(code);
+            long start = System.nanoTime();
+            code = pass.transform().apply(code);
+            long nanos = System.nanoTime() - start;
+            stats.nanos += nanos;
+            generationPassNanos += nanos;
+            stats.instructionsAfter += countInstructions(code);
+            if (verify) {
+                CodeVerifier.verify(procedure, pass.name(), code);
+            }
+        }
+        return code;
+    }
+
+    /**
+     * Run the program passes over the code of the program.
+     *
+     * @param tree of the program the code was generated from
+     * @return the transformed code
+     */
+    public Procedures runProgramPasses(DeclNode.ProcedureNode tree, Procedures procedures) {
+        for (ProgramPass pass : programPasses) {
+            Statistics stats = statistics.get(pass.name());
+            int before = countInstructions(procedures);
+            long start = System.nanoTime();
+            Procedures transformed = pass.transform().apply(tree, procedures);
+            stats.nanos += System.nanoTime() - start;
+            stats.instructionsBefore += before;
+            if (transformed == null) {
+                stats.instructionsAfter += before;
+                continue;
+            }
+            procedures = transformed;
+            stats.instructionsAfter += countInstructions(procedures);
+            stats.applications++;
+            if (verify) {
+                for (Procedures.ProcedureCode proc : procedures.getProcedureEntries()) {
+                    CodeVerifier.verify(proc.getName(), pass.name(), proc.getCode());
+                }
+            }
+        }
+        return procedures;
+    }
+
+    /**
+     * @return the number of machine instructions in the code of all
+     * the procedures
+     */
+    private static int countInstructions(Procedures procedures) {
+        int count = 0;
+        for (Procedures.ProcedureCode proc : procedures.getProcedureEntries()) {
+            count += countInstructions(proc.getCode());
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of machine instructions in the code,
+     * excluding comments and labels
+     */
+    private static int countInstructions(Code code) {
+        int count = 0;
+        for (Instruction inst : code.getInstructionList()) {
+            if (inst.getSize() != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Print the time taken by each pass, its effect on the number
+     * of instructions and the number of times it was applied.
+     * Steps of generation are indented under generation.
+     */
+    public void printStatistics(PrintStream out) {
+        out.println(String.format("%-26s %10s %8s %8s %8s %8s",
+                "Pass", "Time (ms)", "Before", "After", "Change", "Applied"));
+        for (Kind kind : Kind.values()) {
+            for (Map.Entry<String, Statistics> entry : statistics.entrySet()) {
+                Statistics stats = entry.getValue();
+                if (stats.kind == kind) {
+                    out.println(format(entry.getKey(), stats));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the line of statistics for a pass, with a dash for
+     * those not kept for its kind
+     */
+    private static String format(String name, Statistics stats) {
+        String time = stats.timed ? String.format("%.3f", stats.nanos / 1e6) : "-";
+        String before = "-";
+        String after = "-";
+        String change = "-";
+        if (stats.kind == Kind.GENERATION || stats.kind == Kind.CODE ||
+                stats.kind == Kind.PROGRAM) {
+            before = Integer.toString(stats.instructionsBefore);
+            after = Integer.toString(stats.instructionsAfter);
+            change = String.format("%+d", stats.instructionsAfter - stats.instructionsBefore);
+        }
+        String applied = stats.kind == Kind.TREE || stats.kind == Kind.STEP ||
+                stats.kind == Kind.PROGRAM ? Integer.toString(stats.applications) : "-";
+        return String.format("%-26s %10s %8s %8s %8s %8s",
+                stats.kind == Kind.STEP ? "  " + name : name,
+                time, before, after, change, applied);
+    }
+}
@@ -0,0 +1,101 @@
+package tree;
+
+import syms.Type;
+
+/**
+ * class RangeAnalysis - computes an interval containing the value of an
+ * expression, using the bounds of subrange types and constant arithmetic.
+ * The value of a variable (or field) of a scalar type is assumed to lie
+ * within its type, which holds once it has been assigned, as every
+ * assignment narrowing to a subrange is checked.
+ * Arithmetic that may overflow gives the full integer range.
+ */
+public class RangeAnalysis {
+
+    /**
+     * @return an interval containing the value of the expression
+     */
+    public static ValueRange rangeOf(ExpNode exp) {
+        if (exp instanceof ExpNode.ConstNode node) {
+            return ValueRange.of(node.getValue(), node.getValue());
+        } else if (exp instanceof ExpNode.BinaryNode node) {
+            return binaryRange(node);
+        } else if (exp instanceof ExpNode.UnaryNode node) {
+            return unaryRange(node);
+        } else if (exp instanceof ExpNode.DereferenceNode node) {
+            return rangeOf(node.getType());
+        } else if (exp instanceof ExpNode.NarrowSubrangeNode node) {
+            /* After the bounds check the value is within the subrange */
+            Type.SubrangeType subrange = node.getSubrangeType();
+            return rangeOf(node.getExp()).intersect(subrange.getLower(), subrange.getUpper());
+        } else if (exp instanceof ExpNode.WidenSubrangeNode node) {
+            return rangeOf(node.getExp());
+        }
+        /* Addresses, new records and erroneous expressions */
+        return ValueRange.FULL;
+    }
+
+    /**
+     * @return the range of values of a type, full if not a scalar type
+     */
+    private static ValueRange rangeOf(Type type) {
+        Type.ScalarType scalar = type.optDereferenceType().getScalarType();
+        if (scalar == null) {
+            return ValueRange.FULL;
+        }
+        return ValueRange.of(scalar.getLower(), scalar.getUpper());
+    }
+
+    /**
+     * @return an interval containing the value of a binary operation
+     */
+    private static ValueRange binaryRange(ExpNode.BinaryNode node) {
+        ValueRange left = rangeOf(node.getLeft());
+        ValueRange right = rangeOf(node.getRight());
+        long ll = left.getLower(), lu = left.getUpper();
+        long rl = right.getLower(), ru = right.getUpper();
+        return switch (node.getOp()) {
+            case ADD_OP -> ValueRange.ofLong(ll + rl, lu + ru);
+            case SUB_OP -> ValueRange.ofLong(ll - ru, lu - rl);
+            case MUL_OP -> corners(ll * rl, ll * ru, lu * rl, lu * ru);
+            case DIV_OP -> {
+                if (right.contains(0)) {
+                    /* Division by a value near zero may give anything in
+                     * the range of the dividend or its negation */
+                    long bound = Math.max(Math.abs(ll), Math.abs(lu));
+                    yield ValueRange.ofLong(-bound, bound);
+                }
+                /* Java (and the stack machine) division truncates towards
+                 * zero so the extremes are at the corners */
+                yield corners(ll / rl, ll / ru, lu / rl, lu / ru);
+            }
+            case EQUALS_OP, NEQUALS_OP, LESS_OP, LEQUALS_OP, GREATER_OP, GEQUALS_OP ->
+                    ValueRange.of(0, 1);
+            default -> ValueRange.FULL;
+        };
+    }
+
+    /**
+     * @return the range from the least to the greatest of the values
+     */
+    private static ValueRange corners(long... values) {
+        long lower = values[0];
+        long upper = values[0];
+        for (long value : values) {
+            lower = Math.min(lower, value);
+            upper = Math.max(upper, value);
+        }
+        return ValueRange.ofLong(lower, upper);
+    }
+
+    /**
+     * @return an interval containing the value of a unary operation
+     */
+    private static ValueRange unaryRange(ExpNode.UnaryNode node) {
+        ValueRange arg = rangeOf(node.getArg());
+        if (node.getOp() == Operator.NEG_OP) {
+            return ValueRange.ofLong(-(long) arg.getUpper(), -(long) arg.getLower());
+        }
+        return ValueRange.FULL;
+    }
+}
@@ -0,0 +1,112 @@
+package tree;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import syms.SymEntry;
+
+/**
+ * class SideEffects - summary of the variables a statement may modify,
+ * either directly by assignment or read, or through procedure calls.
+ * A call of a procedure declared at level L may modify any variable of
+ * level at most L (those of enclosing scopes visible to the procedure),
+ * whether directly or through the procedures it calls in turn; variables
+ * at deeper levels belong to the new activations.
+ * Expressions in PL0 have no side effects.
+ */
+public class SideEffects implements StatementVisitor {
+    /**
+     * Variables assigned directly
+     */
+    private final Set<SymEntry.VarEntry> assigned = new HashSet<>();
+    /**
+     * Greatest level of a procedure called, -1 if there are no calls
+     */
+    private int maxCalleeLevel = -1;
+    /**
+     * Whether a record field may be assigned
+     */
+    private boolean fieldsAssigned = false;
+
+    /**
+     * @return the side effects of the statement
+     */
+    public static SideEffects of(StatementNode statement) {
+        SideEffects effects = new SideEffects();
+        statement.accept(effects);
+        return effects;
+    }
+
+    /**
+     * @return true iff the statement may modify the variable
+     */
+    public boolean mayModify(SymEntry.VarEntry var) {
+        return assigned.contains(var) || var.getLevel() <= maxCalleeLevel;
+    }
+
+    /**
+     * @return true iff the statement may assign a field of a record
+     */
+    public boolean mayAssignFields() {
+        return fieldsAssigned || maxCalleeLevel >= 0;
+    }
+
+    /**
+     * @return the greatest level of a procedure called, -1 if no calls
+     */
+    public int getMaxCalleeLevel() {
+        return maxCalleeLevel;
+    }
+
+    /**
+     * @return the variables assigned directly
+     */
+    public Set<SymEntry.VarEntry> getAssigned() {
+        return assigned;
+    }
+
+    private void assign(ExpNode lValue) {
+        if (lValue instanceof ExpNode.VariableNode variable) {
+            assigned.add(variable.getVariable());
+        } else {
+            fieldsAssigned = true;
+        }
+    }
+
+    public void visitBlockNode(StatementNode.BlockNode node) {
+        node.getBody().accept(this);
+    }
+
+    public void visitStatementErrorNode(StatementNode.ErrorNode node) {
+    }
+
+    public void visitStatementListNode(StatementNode.ListNode node) {
+        for (StatementNode statement : node.getStatements()) {
+            statement.accept(this);
+        }
+    }
+
+    public void visitAssignmentNode(StatementNode.AssignmentNode node) {
+        assign(node.getLValue());
+    }
+
+    public void visitReadNode(StatementNode.ReadNode node) {
+        assign(node.getLValue());
+    }
+
+    public void visitWriteNode(StatementNode.WriteNode node) {
+    }
+
+    public void visitCallNode(StatementNode.CallNode node) {
+        maxCalleeLevel = Math.max(maxCalleeLevel, node.getEntry().getLevel());
+    }
+
+    public void visitIfNode(StatementNode.IfNode node) {
+        node.getThenStmt().accept(this);
+        node.getElseStmt().accept(this);
+    }
+
+    public void visitWhileNode(StatementNode.WhileNode node) {
+        node.getLoopStmt().accept(this);
+    }
+}
@@ -0,0 +1,79 @@
+package tree;
+
+/**
+ * class ValueRange - an interval of integer values that an expression
+ * is known to lie within.
+ */
+public class ValueRange {
+    /**
+     * Range of all integer values
+     */
+    public static final ValueRange FULL =
+            new ValueRange(Integer.MIN_VALUE, Integer.MAX_VALUE);
+
+    private final int lower;
+    private final int upper;
+
+    private ValueRange(int lower, int upper) {
+        this.lower = lower;
+        this.upper = upper;
+    }
+
+    /**
+     * @return the range lower..upper, requires lower <= upper
+     */
+    public static ValueRange of(int lower, int upper) {
+        return new ValueRange(lower, upper);
+    }
+
+    /**
+     * @return the range of long bounds, or FULL if the bounds are not
+     * within the range of integer values (i.e. the computation may overflow)
+     */
+    static ValueRange ofLong(long lower, long upper) {
+        if (lower < Integer.MIN_VALUE || upper > Integer.MAX_VALUE) {
+            return FULL;
+        }
+        return new ValueRange((int) lower, (int) upper);
+    }
+
+    public int getLower() {
+        return lower;
+    }
+
+    public int getUpper() {
+        return upper;
+    }
+
+    /**
+     * @return true iff every value in this range is within lower..upper
+     */
+    public boolean isWithin(int lower, int upper) {
+        return lower <= this.lower && this.upper <= upper;
+    }
+
+    /**
+     * @return true iff the range contains the value
+     */
+    public boolean contains(int value) {
+        return lower <= value && value <= upper;
+    }
+
+    /**
+     * @return the values in both this range and lower..upper, or the range
+     * lower..upper if there are none (the value is then unreachable)
+     */
+    public ValueRange intersect(int lower, int upper) {
+        int newLower = Math.max(this.lower, lower);
+        int newUpper = Math.min(this.upper, upper);
+        if (newLower > newUpper) {
+            return of(lower, upper);
+        }
+        return of(newLower, newUpper);
+    }
+
+    @Override
+    public String toString() {
+        return lower + ".." + upper;
+    }
+}